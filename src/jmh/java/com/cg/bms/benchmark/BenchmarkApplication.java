@@ -0,0 +1,49 @@
+package com.cg.bms.benchmark;
+
+import com.cg.bms.BmsApplication;
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostInput;
+import com.cg.bms.service.PostService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Starts the application against a fresh in-memory H2 R2DBC database, seeded with a fixed number
+ * of posts, so every fork measures the same data set. The reactive web stack is kept because the
+ * security configuration depends on it, but the server listens on a random port and is not used.
+ */
+final class BenchmarkApplication {
+    static final int SEEDED_POSTS = 5000;
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private BenchmarkApplication(){
+    }
+
+    static ConfigurableApplicationContext start(){
+        return new SpringApplicationBuilder(BmsApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties("server.port=0",
+                        "logging.level.root=WARN",
+                        "logging.level.com.cg.bms=WARN",
+                        "spring.main.banner-mode=off")
+                .run();
+    }
+
+    /**
+     * Inserts {@link #SEEDED_POSTS} posts and returns their ids.
+     */
+    static List<Long> seed(PostService postService){
+        List<Long> ids = new ArrayList<>(SEEDED_POSTS);
+        for(int from=0;from<SEEDED_POSTS;from+=SEED_BATCH_SIZE){
+            List<PostInput> batch = IntStream.range(from, from+SEED_BATCH_SIZE)
+                    .mapToObj(i -> new PostInput("title"+i, "content of post "+i, "author"+(i%50)))
+                    .toList();
+            postService.addPosts(batch).block().stream().map(Post::getId).forEach(ids::add);
+        }
+        return ids;
+    }
+}
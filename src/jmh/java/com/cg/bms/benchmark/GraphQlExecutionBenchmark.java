@@ -0,0 +1,83 @@
+package com.cg.bms.benchmark;
+
+import com.cg.bms.service.PostService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full GraphQL document execution (parse, validate, fetch, serialize to a result map) through
+ * {@link ExecutionGraphQlService}, i.e. everything the HTTP handler does except the transport.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphQlExecutionBenchmark {
+    private static final String GET_POST_BY_ID = "query getPostById($id:ID!){ getPostById(id:$id){ id title author content createdAt } }";
+    private static final String GET_POSTS = "query getPosts($pageNumber:Int!,$pageSize:Int!){ getPosts(pageNumber:$pageNumber,pageSize:$pageSize)"
+            + "{ posts{ id title author createdAt } totalElements totalPages } }";
+    private ConfigurableApplicationContext context;
+    private ExecutionGraphQlService graphQlService;
+    private List<Long> ids;
+
+    @State(Scope.Benchmark)
+    public static class PageDepth {
+        @Param({"0", "100"})
+        int pageNumber;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BenchmarkApplication.start();
+        graphQlService = context.getBean(ExecutionGraphQlService.class);
+        ids = BenchmarkApplication.seed(context.getBean(PostService.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> getPostById(){
+        return execute(GET_POST_BY_ID, Map.of("id", ids.get(ThreadLocalRandom.current().nextInt(ids.size()))));
+    }
+
+    @Benchmark
+    public Map<String, Object> getPosts(PageDepth pageDepth){
+        return execute(GET_POSTS, Map.of("pageNumber", pageDepth.pageNumber, "pageSize", 20));
+    }
+
+    private Map<String, Object> execute(String document, Map<String, Object> variables){
+        ExecutionGraphQlResponse response = graphQlService
+                .execute(new DefaultExecutionGraphQlRequest(document, null, variables, null, UUID.randomUUID().toString(), Locale.ROOT))
+                .block();
+        if(!response.getErrors().isEmpty()){
+            throw new IllegalStateException("GraphQL errors: "+response.getErrors());
+        }
+        return response.toMap();
+    }
+}
@@ -0,0 +1,88 @@
+package com.cg.bms.benchmark;
+
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.service.PostService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PostService} paths end to end through the repository and H2. Throughput and sample-time
+ * modes are both recorded, the latter for the p99; run with {@code -prof gc} for allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostServiceBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private ConfigurableApplicationContext context;
+    private PostService postService;
+    private List<Long> ids;
+
+    @State(Scope.Benchmark)
+    public static class PageDepth {
+        @Param({"0", "10", "100", "249"})
+        int pageNumber;
+    }
+
+    @State(Scope.Benchmark)
+    public static class NewPost {
+        @Param({"100", "1000000"})
+        int contentLength;
+        PostInput postInput;
+
+        @Setup(Level.Trial)
+        public void setUp(){
+            postInput = new PostInput("benchmark", "x".repeat(contentLength), "bench");
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BenchmarkApplication.start();
+        postService = context.getBean(PostService.class);
+        ids = BenchmarkApplication.seed(postService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public Post getPostById(){
+        return postService.getPostById(ids.get(ThreadLocalRandom.current().nextInt(ids.size()))).block();
+    }
+
+    @Benchmark
+    public PostData getPosts(PageDepth pageDepth){
+        return postService.getPosts(PageRequest.of(pageDepth.pageNumber, PAGE_SIZE, Sort.by("id")), PostProjection.FULL).block();
+    }
+
+    @Benchmark
+    public Post addPost(NewPost newPost){
+        return postService.addPost(newPost.postInput).block();
+    }
+}
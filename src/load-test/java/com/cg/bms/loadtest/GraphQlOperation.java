@@ -0,0 +1,12 @@
+package com.cg.bms.loadtest;
+
+import java.util.Map;
+
+/**
+ * One request of the workload, as exported in a Postman collection.
+ */
+record GraphQlOperation(String name, String query, Map<String, Object> variables) {
+    boolean isMutation(){
+        return query.stripLeading().startsWith("mutation");
+    }
+}
@@ -0,0 +1,68 @@
+package com.cg.bms.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation latency histograms (microseconds, 3 significant digits) and error counts.
+ */
+final class LatencyRecorder {
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final String TOTAL = "TOTAL";
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void record(String operation, long latencyNanos, boolean failed){
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_TRACKABLE_MICROS);
+        histogram(operation).recordValue(micros);
+        histogram(TOTAL).recordValue(micros);
+        if(failed){
+            errors.computeIfAbsent(operation, key -> new LongAdder()).increment();
+            errors.computeIfAbsent(TOTAL, key -> new LongAdder()).increment();
+        }
+    }
+
+    void report(long elapsedNanos, PrintStream out){
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%-14s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for(Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()){
+            Histogram histogram = entry.getValue();
+            LongAdder failed = errors.get(entry.getKey());
+            out.printf("%-14s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    entry.getKey(), histogram.getTotalCount(), failed==null ? 0 : failed.sum(),
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    /**
+     * Writes each histogram's full percentile distribution in HdrHistogram's .hgrm format.
+     */
+    void writeDistributions(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for(Map.Entry<String, Histogram> entry : histograms.entrySet()){
+            try(PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")))){
+                entry.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private Histogram histogram(String operation){
+        return histograms.computeIfAbsent(operation, key -> new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3));
+    }
+
+    private static double millis(Histogram histogram, double percentile){
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,169 @@
+package com.cg.bms.loadtest;
+
+import com.cg.bms.BmsApplication;
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostInput;
+import com.cg.bms.service.PostService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Offline end-to-end load test. Starts the application on a random port with JWT validation
+ * pointed at a {@link LocalJwtIssuer}, seeds posts, then replays the GraphQL requests of a Postman
+ * collection over HTTP with a fixed number of concurrent clients and a weighted query/mutation mix.
+ * <p>
+ * Options ({@code --name=value}): {@code collection}, {@code duration}, {@code warmup},
+ * {@code concurrency}, {@code seed-posts} and {@code weights} (e.g. {@code getPostById:40,addPost:10}).
+ * A top-level {@code id} variable is replaced by a random seeded post id on every request.
+ */
+public class LoadTestHarness {
+    private static final String AUDIENCE = "bms_auth0_api_identifier";
+    private static final Map<String, Integer> DEFAULT_WEIGHTS = Map.of(
+            "getPostById", 40, "getPosts", 30, "getAllPosts", 1, "addPost", 15, "updatePost", 10, "deletePost", 4);
+    private final List<GraphQlOperation> operations;
+    private final int[] cumulativeWeights;
+    private final List<Long> postIds;
+    private final WebClient client;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    LoadTestHarness(List<GraphQlOperation> operations, Map<String, Integer> weights, List<Long> postIds, WebClient client){
+        this.operations = operations;
+        this.cumulativeWeights = new int[operations.size()];
+        int total = 0;
+        for(int i=0;i<operations.size();i++){
+            total += weights.getOrDefault(operations.get(i).name(), 1);
+            cumulativeWeights[i] = total;
+        }
+        this.postIds = postIds;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // A devtools restart would re-run this main method without its arguments.
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Map<String, String> options = parse(args);
+        Path collection = Path.of(options.getOrDefault("collection", "graphql.postman_collection.json"));
+        Duration duration = Duration.parse(options.getOrDefault("duration", "PT30S"));
+        Duration warmup = Duration.parse(options.getOrDefault("warmup", "PT5S"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int seedPosts = Integer.parseInt(options.getOrDefault("seed-posts", "1000"));
+        Map<String, Integer> weights = options.containsKey("weights") ? parseWeights(options.get("weights")) : DEFAULT_WEIGHTS;
+        List<GraphQlOperation> operations = PostmanCollection.read(collection);
+
+        try(LocalJwtIssuer issuer = new LocalJwtIssuer();
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(BmsApplication.class)
+                    // Command-line arguments, so they take precedence over the Auth0 settings in application.properties
+                    .run("--server.port=0",
+                            "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + issuer.issuer(),
+                            "--spring.security.oauth2.resourceserver.jwt.jwk-set-uri=" + issuer.jwkSetUri(),
+                            // every client shares one token, so the per-principal budget has to admit all of them
+                            "--bms.graphql.budget.max-concurrent-operations=" + concurrency,
+                            "--bms.graphql.budget.max-in-flight-cost=" + Long.MAX_VALUE,
+                            "--logging.level.com.cg.bms=WARN")){
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            List<Long> postIds = new CopyOnWriteArrayList<>(seed(context.getBean(PostService.class), seedPosts));
+            WebClient client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port + "/graphql")
+                    .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + issuer.mintToken(AUDIENCE, "openid profile", duration.plus(warmup).multipliedBy(2)))
+                    .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(64 * 1024 * 1024))
+                    .build();
+            System.out.printf("Replaying %d operations from %s with %d clients for %s (warm-up %s)%n",
+                    operations.size(), collection, concurrency, duration, warmup);
+            new LoadTestHarness(operations, weights, postIds, client)
+                    .run(concurrency, warmup, duration);
+        }
+    }
+
+    void run(int concurrency, Duration warmup, Duration duration) throws Exception {
+        drive(concurrency, warmup, false);
+        long started = System.nanoTime();
+        drive(concurrency, duration, true);
+        recorder.report(System.nanoTime() - started, System.out);
+        Path distributions = Path.of("target", "load-test");
+        recorder.writeDistributions(distributions);
+        System.out.println("Latency distributions written to " + distributions.toAbsolutePath());
+    }
+
+    private void drive(int concurrency, Duration duration, boolean record){
+        long deadline = System.nanoTime() + duration.toNanos();
+        Flux.range(0, concurrency)
+                .flatMap(client -> Mono.defer(() -> send(pick(), record)).repeat(() -> System.nanoTime() < deadline), concurrency)
+                .blockLast();
+    }
+
+    private Mono<Void> send(GraphQlOperation operation, boolean record){
+        Map<String, Object> variables = new HashMap<>(operation.variables());
+        if(variables.containsKey("id") && !postIds.isEmpty()){
+            variables.put("id", postIds.get(ThreadLocalRandom.current().nextInt(postIds.size())));
+        }
+        long started = System.nanoTime();
+        return client.post()
+                .bodyValue(Map.of("query", operation.query(), "variables", variables))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(body -> body.contains("\"errors\""))
+                .onErrorResume(ex -> Mono.just(true))
+                .doOnNext(failed -> {
+                    if(record){
+                        recorder.record(operation.name(), System.nanoTime() - started, failed);
+                    }
+                })
+                .then();
+    }
+
+    private GraphQlOperation pick(){
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for(int i=0;i<cumulativeWeights.length;i++){
+            if(value < cumulativeWeights[i]){
+                return operations.get(i);
+            }
+        }
+        return operations.get(operations.size() - 1);
+    }
+
+    private static List<Long> seed(PostService postService, int count){
+        List<Long> ids = new ArrayList<>(count);
+        for(int from=0;from<count;from+=1000){
+            List<PostInput> batch = IntStream.range(from, Math.min(from+1000, count))
+                    .mapToObj(i -> new PostInput("load" + i, "content of post " + i, "author" + (i%50)))
+                    .toList();
+            postService.addPosts(batch).block().stream().map(Post::getId).forEach(ids::add);
+        }
+        return ids;
+    }
+
+    private static Map<String, String> parse(String[] args){
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args){
+            if(!arg.startsWith("--") || !arg.contains("=")){
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseWeights(String weights){
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        for(String weight : weights.split(",")){
+            String[] parts = weight.split(":");
+            parsed.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cg.bms.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Offline stand-in for the Auth0 tenant: an in-memory RSA key, a JWKS endpoint serving its public
+ * half on a loopback port, and a minter for access tokens the application accepts.
+ */
+final class LocalJwtIssuer implements AutoCloseable {
+    static final String JWKS_PATH = "/.well-known/jwks.json";
+    private final RSAKey signingKey;
+    private final HttpServer server;
+
+    LocalJwtIssuer(){
+        try{
+            this.signingKey = new RSAKeyGenerator(2048).keyID(UUID.randomUUID().toString()).generate();
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        }
+        catch(JOSEException ex){
+            throw new IllegalStateException("Could not generate the signing key", ex);
+        }
+        catch(IOException ex){
+            throw new UncheckedIOException("Could not start the JWKS endpoint", ex);
+        }
+        byte[] jwks = new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+        server.createContext(JWKS_PATH, exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, jwks.length);
+            try(OutputStream body = exchange.getResponseBody()){
+                body.write(jwks);
+            }
+        });
+        server.start();
+    }
+
+    String issuer(){
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    String jwkSetUri(){
+        return "http://localhost:" + server.getAddress().getPort() + JWKS_PATH;
+    }
+
+    String mintToken(String audience, String scope, Duration validity){
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject("load-test")
+                .audience(audience)
+                .claim("scope", scope)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(validity)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        try{
+            jwt.sign(new RSASSASigner(signingKey));
+        }
+        catch(JOSEException ex){
+            throw new IllegalStateException("Could not sign the access token", ex);
+        }
+        return jwt.serialize();
+    }
+
+    @Override
+    public void close(){
+        server.stop(0);
+    }
+}
@@ -0,0 +1,42 @@
+package com.cg.bms.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the GraphQL requests out of a Postman v2.1 collection, descending into folders.
+ */
+final class PostmanCollection {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private PostmanCollection(){
+    }
+
+    static List<GraphQlOperation> read(Path collection) throws IOException {
+        List<GraphQlOperation> operations = new ArrayList<>();
+        collect(MAPPER.readTree(collection.toFile()).path("item"), operations);
+        return operations;
+    }
+
+    private static void collect(JsonNode items, List<GraphQlOperation> operations) throws IOException {
+        for(JsonNode item : items){
+            if(item.has("item")){
+                collect(item.path("item"), operations);
+                continue;
+            }
+            JsonNode graphql = item.path("request").path("body").path("graphql");
+            if(graphql.isMissingNode()){
+                continue;
+            }
+            String variables = graphql.path("variables").asText("");
+            operations.add(new GraphQlOperation(item.path("name").asText(), graphql.path("query").asText(),
+                    variables.isBlank() ? Map.of() : MAPPER.readValue(variables, new TypeReference<Map<String, Object>>(){})));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.cg.bms.cache;
+
+import com.cg.bms.model.Post;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of posts by id, bounded by size and time-to-live.
+ * <p>
+ * Only the post rows are kept, never their content: a single post can carry up to
+ * {@link com.cg.bms.model.PostInput#MAX_CONTENT_LENGTH} characters, so an entry count would not
+ * bound the memory held. Posts handed to the cache lose their content, and readers load it
+ * separately when it is selected.
+ * <p>
+ * Entries hold the in-flight lookup rather than the post itself, so concurrent misses for
+ * the same id share one database query, the same way {@code Mono.cache()} shares one
+ * subscription. Lookups that find no post are not cached. Hit, miss and eviction counts are
+ * published as the {@code cache.*} meters tagged {@code cache=posts}.
+ */
+@Component
+public class PostCache {
+    public static final String NAME = "posts";
+    private final AsyncCache<Long, Post> cache;
+
+    @Autowired
+    public PostCache(@Value("${bms.cache.posts.maximum-size:10000}") long maximumSize,
+                     @Value("${bms.cache.posts.expire-after-write:PT5M}") Duration expireAfterWrite,
+                     MeterRegistry meterRegistry){
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync(), NAME);
+    }
+
+    public Mono<Post> get(Long id, Function<Long, Mono<Post>> loader){
+        // suppressCancel: one cancelled caller must not cancel the lookup other callers are waiting on.
+        // The loader runs with the caller's context, which carries the connection route.
+        return Mono.deferContextual(context -> Mono.fromFuture(
+                () -> this.cache.get(id, (key, executor) -> loader.apply(key).map(PostCache::withoutContent).contextWrite(context).toFuture()), true));
+    }
+
+    /**
+     * Resolves several ids at once. Only the ids missing from the cache are passed to the bulk
+     * loader, in one call. Ids the loader does not return are left out of the result.
+     */
+    public Mono<Map<Long, Post>> getAll(Collection<Long> ids, Function<Set<Long>, Mono<Map<Long, Post>>> bulkLoader){
+        return Mono.deferContextual(context -> Mono.fromFuture(
+                () -> this.cache.getAll(ids, (keys, executor) -> bulkLoader.apply(Set.copyOf(keys))
+                        .map(posts -> posts.values().stream().collect(Collectors.toMap(Post::getId, PostCache::withoutContent)))
+                        .contextWrite(context).toFuture()), true));
+    }
+
+    public void put(Post post){
+        this.cache.put(post.getId(), CompletableFuture.completedFuture(withoutContent(post)));
+    }
+
+    public void invalidate(Long id){
+        this.cache.synchronous().invalidate(id);
+    }
+
+    public CacheStats stats(){
+        return this.cache.synchronous().stats();
+    }
+
+    private static Post withoutContent(Post post){
+        return post.getContent()==null ? post : new Post(post.getId(), post.getTitle(), null, post.getContentLength(),
+                post.getContentHash(), post.getAuthor(), post.getCreatedAt(), post.getUpdatedAt(), post.getVersion());
+    }
+}
@@ -0,0 +1,155 @@
+package com.cg.bms.config;
+
+import com.cg.bms.repository.RepositoryTimeoutInterceptor;
+import com.cg.bms.routing.ReadWriteRoutingConnectionFactory;
+import com.cg.bms.routing.ReadWriteRoutingInterceptor;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.r2dbc.EmbeddedDatabaseConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.util.StringUtils;
+import java.time.Duration;
+
+/**
+ * The R2DBC connection pools, configured with Boot's {@code spring.r2dbc.pool.*} keys plus
+ * {@code bms.r2dbc.*}. Unless set explicitly, each pool starts with one connection per core and
+ * grows to two per core. Callers wait at most {@code max-acquire-time} for a connection, and at most
+ * {@code max-pending-acquires} callers wait at once; beyond that they fail straight away. The
+ * initial connections are opened at startup, before the schema migration runs.
+ * <p>
+ * There is one pool for the primary and one for the read replica. The {@link ConnectionFactory}
+ * that repositories use sends {@code @ReadReplica} service methods to the replica and everything
+ * else to the primary. With {@code bms.r2dbc.routing.read-your-writes} set, a principal reads from
+ * the primary for that long after each of its writes.
+ */
+@Configuration
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class ConnectionPoolConfig {
+    @Value("${spring.r2dbc.pool.initial-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int initialSize;
+    @Value("${spring.r2dbc.pool.max-size:#{T(java.lang.Runtime).getRuntime().availableProcessors() * 2}}")
+    private int maxSize;
+    @Value("${spring.r2dbc.pool.max-idle-time:PT10M}")
+    private Duration maxIdleTime;
+    @Value("${spring.r2dbc.pool.max-life-time:PT30M}")
+    private Duration maxLifeTime;
+    @Value("${spring.r2dbc.pool.max-acquire-time:PT2S}")
+    private Duration maxAcquireTime;
+    @Value("${spring.r2dbc.pool.max-create-connection-time:PT5S}")
+    private Duration maxCreateConnectionTime;
+    @Value("${spring.r2dbc.pool.max-validation-time:PT1S}")
+    private Duration maxValidationTime;
+    @Value("${spring.r2dbc.pool.validation-query:}")
+    private String validationQuery;
+    @Value("${bms.r2dbc.pool.max-pending-acquires:#{T(java.lang.Runtime).getRuntime().availableProcessors() * 8}}")
+    private int maxPendingAcquires;
+
+    @Value("${bms.r2dbc.replica.url:}")
+    private String replicaUrl;
+    @Value("${bms.r2dbc.replica.username:}")
+    private String replicaUsername;
+    @Value("${bms.r2dbc.replica.password:}")
+    private String replicaPassword;
+
+    @Bean(destroyMethod="dispose")
+    public ConnectionPool primaryConnectionPool(R2dbcProperties properties){
+        return pool("primary", target(properties.getUrl(), properties.getUsername(), properties.getPassword(), properties.determineUniqueName()));
+    }
+
+    /**
+     * Without {@code bms.r2dbc.replica.url}, the replica pool opens its own connections to the
+     * primary database, which still keeps heavy read traffic from starving writes of connections.
+     */
+    @Bean(destroyMethod="dispose")
+    public ConnectionPool replicaConnectionPool(R2dbcProperties properties){
+        if(!StringUtils.hasText(replicaUrl)){
+            return pool("replica", target(properties.getUrl(), properties.getUsername(), properties.getPassword(), properties.determineUniqueName()));
+        }
+        return pool("replica", target(replicaUrl, replicaUsername, replicaPassword, null));
+    }
+
+    @Bean
+    @Primary
+    public ConnectionFactory connectionFactory(ConnectionPool primaryConnectionPool, ConnectionPool replicaConnectionPool){
+        return new ReadWriteRoutingConnectionFactory(primaryConnectionPool, replicaConnectionPool);
+    }
+
+    /**
+     * Infrastructure role so the auto-proxy creator that already applies {@code @Transactional}
+     * picks it up.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readWriteRoutingAdvisor(@Value("${bms.r2dbc.routing.read-your-writes:PT0S}") Duration readYourWrites){
+        return new DefaultPointcutAdvisor(ReadWriteRoutingInterceptor.POINTCUT, new ReadWriteRoutingInterceptor(readYourWrites));
+    }
+
+    @Bean
+    public ConnectionPoolWarmup connectionPoolWarmup(ObjectProvider<ConnectionPool> pools){
+        return new ConnectionPoolWarmup(pools, Math.min(initialSize, maxSize));
+    }
+
+    /**
+     * Applies {@link RepositoryTimeoutInterceptor} to every repository, the same hook Boot uses for
+     * repository metrics.
+     */
+    @Bean
+    public static BeanPostProcessor repositoryTimeoutPostProcessor(@Value("${bms.r2dbc.statement-timeout:PT5S}") Duration statementTimeout){
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if(bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean){
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(new RepositoryTimeoutInterceptor(statementTimeout))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    ConnectionPool pool(String name, ConnectionFactory target){
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(target)
+                .name(name)
+                .initialSize(Math.min(initialSize, maxSize))
+                .maxSize(maxSize)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .maxAcquireTime(maxAcquireTime)
+                .maxCreateConnectionTime(maxCreateConnectionTime)
+                .maxValidationTime(maxValidationTime)
+                .customizer(pool -> pool.maxPendingAcquire(maxPendingAcquires));
+        if(StringUtils.hasText(validationQuery)){
+            builder.validationQuery(validationQuery);
+        }
+        return new ConnectionPool(builder.build());
+    }
+
+    /**
+     * Without a URL, an in-memory H2 database named the way Boot names its embedded databases.
+     */
+    static ConnectionFactory target(String url, String username, String password, String embeddedName){
+        ConnectionFactoryBuilder builder = ConnectionFactoryBuilder.withUrl(StringUtils.hasText(url) ? url
+                : EmbeddedDatabaseConnection.H2.getUrl(embeddedName));
+        if(StringUtils.hasText(username)){
+            builder.username(username);
+        }
+        if(StringUtils.hasText(password)){
+            builder.password(password);
+        }
+        return builder.build();
+    }
+}
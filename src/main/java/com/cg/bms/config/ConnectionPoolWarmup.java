@@ -0,0 +1,37 @@
+package com.cg.bms.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Opens each pool's initial connections at startup, before the schema migration and the web
+ * server, so the first requests do not pay for connection setup. A pool that cannot be warmed is
+ * logged and left to open connections on demand.
+ */
+@Slf4j
+public class ConnectionPoolWarmup implements InitializingBean {
+    private final ObjectProvider<ConnectionPool> pools;
+    private final int initialSize;
+
+    public ConnectionPoolWarmup(ObjectProvider<ConnectionPool> pools, int initialSize){
+        this.pools=pools;
+        this.initialSize=initialSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if(initialSize<=0){
+            return;
+        }
+        pools.orderedStream().forEach(pool -> {
+            try{
+                log.info("Warmed up {} with {} connections",pool,pool.warmup().block());
+            }
+            catch(RuntimeException ex){
+                log.warn("Warming up {} failed",pool,ex);
+            }
+        });
+    }
+}
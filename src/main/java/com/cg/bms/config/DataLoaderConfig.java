@@ -0,0 +1,24 @@
+package com.cg.bms.config;
+
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostContentSlice;
+import com.cg.bms.service.PostService;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+
+/**
+ * Registers per-request DataLoaders. All {@code Post} lookups by id made while executing one
+ * GraphQL request are de-duplicated and resolved with a single {@code IN (...)} query, and so
+ * are the contents and content slices it selects.
+ */
+@Configuration
+public class DataLoaderConfig {
+    public DataLoaderConfig(BatchLoaderRegistry batchLoaderRegistry, PostService postService){
+        batchLoaderRegistry.forTypePair(Long.class, Post.class)
+                .registerMappedBatchLoader((ids, environment) -> postService.getPostsByIds(ids).collectMap(Post::getId));
+        batchLoaderRegistry.<Long, String>forName("postContent")
+                .registerMappedBatchLoader((ids, environment) -> postService.getPostContents(ids));
+        batchLoaderRegistry.<PostContentSlice, String>forName("postContentSlice")
+                .registerMappedBatchLoader((slices, environment) -> postService.getPostContentSlices(slices));
+    }
+}
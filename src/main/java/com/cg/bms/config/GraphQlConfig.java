@@ -1,9 +1,24 @@
 package com.cg.bms.config;
 
+import com.cg.bms.event.PostDataVersion;
+import com.cg.bms.graphql.CachingPreparsedDocumentProvider;
+import com.cg.bms.graphql.GraphQlGetHandler;
+import com.cg.bms.graphql.PersistedQueryJsonDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import graphql.scalars.ExtendedScalars;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
 
 @Configuration
 public class GraphQlConfig{
@@ -11,4 +26,45 @@ public class GraphQlConfig{
     public RuntimeWiringConfigurer runtimeWiringConfigurer(){
         return wiringBuilder->wiringBuilder.scalar(ExtendedScalars.DateTime);
     }
-}
\ No newline at end of file
+
+    @Bean
+    public CachingPreparsedDocumentProvider preparsedDocumentProvider(@Value("${bms.graphql.documents.maximum-size:1000}") long maximumDocuments,
+                                                                      @Value("${bms.graphql.persisted-queries.maximum-size:1000}") long maximumPersistedQueries,
+                                                                      MeterRegistry meterRegistry){
+        return new CachingPreparsedDocumentProvider(maximumDocuments, maximumPersistedQueries, meterRegistry);
+    }
+
+    @Bean
+    public GraphQlSourceBuilderCustomizer preparsedDocumentCustomizer(CachingPreparsedDocumentProvider preparsedDocumentProvider){
+        return builder->builder.configureGraphQl(graphQl->graphQl.preparsedDocumentProvider(preparsedDocumentProvider));
+    }
+
+    @Bean
+    public GraphQlGetHandler graphQlGetHandler(WebGraphQlHandler webGraphQlHandler, PostDataVersion postDataVersion,
+                                               ObjectMapper objectMapper, Environment environment,
+                                               @Value("${bms.graphql.cache-control.default:private, no-cache}") String defaultCacheControl){
+        return new GraphQlGetHandler(webGraphQlHandler, postDataVersion, objectMapper, environment, defaultCacheControl);
+    }
+
+    /**
+     * Ahead of Boot's GraphQL routes, which answer GET with 405. Only requests that carry an
+     * operation are taken, so GraphiQL and the schema page stay where they are.
+     */
+    @Bean
+    @Order(-1)
+    public RouterFunction<ServerResponse> graphQlGetRouterFunction(GraphQlGetHandler graphQlGetHandler,
+                                                                   @Value("${spring.graphql.path:/graphql}") String path){
+        return RouterFunctions.route()
+                .GET(path, request -> request.queryParam("query").isPresent() || request.queryParam("extensions").isPresent(),
+                        graphQlGetHandler::handleRequest)
+                .build();
+    }
+
+    /**
+     * Runs after Boot's own Jackson customizer, so it replaces the decoder that one registers.
+     */
+    @Bean
+    public CodecCustomizer persistedQueryCodecCustomizer(ObjectMapper objectMapper){
+        return configurer->configurer.defaultCodecs().jackson2JsonDecoder(new PersistedQueryJsonDecoder(objectMapper));
+    }
+}
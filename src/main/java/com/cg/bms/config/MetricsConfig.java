@@ -0,0 +1,37 @@
+package com.cg.bms.config;
+
+import com.cg.bms.metrics.GraphQlPhaseInstrumentation;
+import com.cg.bms.metrics.ReactiveTimedInterceptor;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+
+@Configuration
+public class MetricsConfig {
+    /**
+     * Infrastructure role so the auto-proxy creator that already applies {@code @Transactional}
+     * picks it up; the registry is looked up lazily to keep this bean free of early dependencies.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor timedAdvisor(ObjectProvider<MeterRegistry> meterRegistry){
+        return new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Timed.class, true), new ReactiveTimedInterceptor(meterRegistry));
+    }
+
+    /**
+     * Operation names come from clients, so only the first few hundred get their own series.
+     */
+    @Bean
+    public MeterFilter graphQlOperationTagLimit(@Value("${bms.metrics.graphql.max-operation-names:200}") int maxOperationNames){
+        return MeterFilter.maximumAllowableTags(GraphQlPhaseInstrumentation.METER, "operation", maxOperationNames, MeterFilter.deny());
+    }
+}
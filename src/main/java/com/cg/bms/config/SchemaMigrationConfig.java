@@ -0,0 +1,24 @@
+package com.cg.bms.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+
+/**
+ * Brings the schema up to date at startup, before any repository touches the database.
+ */
+@Configuration
+public class SchemaMigrationConfig {
+    @Bean
+    @DependsOn("connectionPoolWarmup")
+    public ConnectionFactoryInitializer schemaMigrationInitializer(ConnectionFactory connectionFactory,
+                                                                   @Value("${bms.schema.migrations:classpath:db/migration/V*__*.sql}") String migrations){
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        initializer.setDatabasePopulator(new SchemaMigrator(migrations));
+        return initializer;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cg.bms.config;
+
+import io.r2dbc.spi.Connection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.r2dbc.connection.init.DatabasePopulator;
+import org.springframework.r2dbc.connection.init.ScriptUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies versioned scripts named {@code V<version>__<description>.sql} in version order and
+ * records each one in {@code schema_history}, so every script runs exactly once per database.
+ */
+@Slf4j
+public class SchemaMigrator implements DatabasePopulator {
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String CREATE_HISTORY = "CREATE TABLE IF NOT EXISTS schema_history(version int primary key,"
+            + " description varchar(200) not null, installed_At TIMESTAMP WITH TIME ZONE not null)";
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(String locationPattern){
+        this(locationPattern, new PathMatchingResourcePatternResolver());
+    }
+
+    SchemaMigrator(String locationPattern, ResourcePatternResolver resolver){
+        try {
+            this.migrations = Arrays.stream(resolver.getResources(locationPattern))
+                    .map(SchemaMigrator::toMigration)
+                    .sorted(Comparator.comparingInt(Migration::version))
+                    .toList();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not list migrations at " + locationPattern, ex);
+        }
+        Set<Integer> versions = new HashSet<>();
+        for(Migration migration : migrations){
+            if(!versions.add(migration.version())){
+                throw new IllegalStateException("Duplicate migration version " + migration.version());
+            }
+        }
+    }
+
+    @Override
+    public Mono<Void> populate(Connection connection) {
+        return Mono.from(connection.createStatement(CREATE_HISTORY).execute())
+                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                .thenMany(Flux.from(connection.createStatement("SELECT version FROM schema_history").execute()))
+                .concatMap(result -> result.map((row, metadata) -> row.get("version", Integer.class)))
+                .collect(HashSet<Integer>::new, Set::add)
+                .flatMapMany(applied -> Flux.fromIterable(migrations).filter(migration -> !applied.contains(migration.version())))
+                .concatMap(migration -> apply(connection, migration))
+                .then();
+    }
+
+    private Mono<Void> apply(Connection connection, Migration migration){
+        log.info("Applying schema migration V{} - {}",migration.version(),migration.description());
+        return ScriptUtils.executeSqlScript(connection, migration.script())
+                .then(Mono.from(connection.createStatement("INSERT INTO schema_history(version, description, installed_At) VALUES ($1, $2, $3)")
+                        .bind(0, migration.version())
+                        .bind(1, migration.description())
+                        .bind(2, OffsetDateTime.now())
+                        .execute()))
+                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                .then();
+    }
+
+    private static Migration toMigration(Resource script){
+        Matcher matcher = SCRIPT_NAME.matcher(String.valueOf(script.getFilename()));
+        if(!matcher.matches()){
+            throw new IllegalStateException("Migration " + script.getFilename() + " does not match V<version>__<description>.sql");
+        }
+        return new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '), script);
+    }
+
+    private record Migration(int version, String description, Resource script){}
+}
@@ -1,12 +1,30 @@
 package com.cg.bms.config;
 
+import com.cg.bms.security.CachingReactiveJwtDecoder;
+import com.cg.bms.security.RefreshingJwkSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 @Configuration
 @EnableWebFluxSecurity
@@ -20,4 +38,42 @@ public class SecurityConfig {
                 .oauth2ResourceServer(oauth2->oauth2.jwt(Customizer.withDefaults()));
         return httpSecurity.build();
     }
+
+    /**
+     * Signing keys, fetched at startup and refreshed in the background. When no JWK set URI is
+     * configured the issuer's {@code .well-known/jwks.json} is used, which is where Auth0 publishes it.
+     */
+    @Bean
+    public RefreshingJwkSource jwkSource(@Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+                                         @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri:}") String jwkSetUri,
+                                         @Value("${bms.security.jwks.refresh-interval:PT5M}") Duration refreshInterval,
+                                         @Value("${bms.security.jwks.min-refresh-interval:PT30S}") Duration minRefreshInterval){
+        if(!StringUtils.hasText(jwkSetUri)){
+            jwkSetUri = (issuerUri.endsWith("/") ? issuerUri : issuerUri + "/") + ".well-known/jwks.json";
+        }
+        return new RefreshingJwkSource(WebClient.create(), jwkSetUri, refreshInterval, minRefreshInterval);
+    }
+
+    @Bean
+    public ReactiveJwtDecoder jwtDecoder(RefreshingJwkSource jwkSource,
+                                         @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+                                         @Value("${spring.security.oauth2.resourceserver.jwt.audiences:}") List<String> audiences,
+                                         @Value("${bms.security.jwt.cache.maximum-size:10000}") long maximumSize,
+                                         @Value("${bms.security.jwt.cache.max-time-to-live:PT1H}") Duration maxTimeToLive,
+                                         MeterRegistry meterRegistry){
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+        decoder.setJwtValidator(validator(issuerUri, audiences));
+        return new CachingReactiveJwtDecoder(decoder, maximumSize, maxTimeToLive, meterRegistry);
+    }
+
+    private static OAuth2TokenValidator<Jwt> validator(String issuerUri, List<String> audiences){
+        List<String> required = audiences.stream().filter(StringUtils::hasText).toList();
+        OAuth2TokenValidator<Jwt> issuer = JwtValidators.createDefaultWithIssuer(issuerUri);
+        if(required.isEmpty()){
+            return issuer;
+        }
+        OAuth2TokenValidator<Jwt> audience = new JwtClaimValidator<Collection<String>>(JwtClaimNames.AUD,
+                aud -> aud!=null && !Collections.disjoint(aud, required));
+        return new DelegatingOAuth2TokenValidator<>(issuer, audience);
+    }
 }
@@ -1,68 +1,227 @@
 package com.cg.bms.controller;
 
+import com.cg.bms.event.PostEvent;
+import com.cg.bms.event.PostEventHub;
+import com.cg.bms.exception.PostNotFoundException;
+import com.cg.bms.logging.LogFields;
 import com.cg.bms.model.Post;
+import com.cg.bms.model.PostConnection;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostFilter;
 import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.model.PostSort;
+import com.cg.bms.model.PostUpdateInput;
 import com.cg.bms.service.PostService;
+import graphql.schema.DataFetchingFieldSelectionSet;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
-import lombok.SneakyThrows;
+import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
+import org.dataloader.DataLoader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static com.cg.bms.logging.RequestLogSamplingFilter.REQUEST;
 
 @Controller
 @Slf4j
 public class PostGraphQLController {
+    private static final int DEFAULT_STREAM_CHUNK_SIZE = 20;
+    private static final int MAX_CONTENT_CHUNK = 1000000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_SEARCH_QUERY_LENGTH = 200;
     private final PostService postService;
+    private final PostEventHub postEventHub;
     @Autowired
-    public PostGraphQLController(PostService postService){
+    public PostGraphQLController(PostService postService, PostEventHub postEventHub){
         this.postService=postService;
+        this.postEventHub=postEventHub;
     }
 
-    @SneakyThrows
     @QueryMapping("getPosts")
     Mono<PostData> getPosts(@Min(0) @Argument int pageNumber,
-                            @Min(1) @Max(100) @Argument int pageSize){
-        return this.postService.getPosts(PageRequest.of(pageNumber, pageSize, Sort.by("id")));
+                            @Min(1) @Max(100) @Argument int pageSize,
+                            DataFetchingFieldSelectionSet selectionSet){
+        return this.postService.getPosts(PageRequest.of(pageNumber, pageSize, Sort.by("id")),
+                PostProjection.of(selectionSet.contains("posts/content")));
+    }
+    @QueryMapping("postsConnection")
+    public Mono<PostConnection> postsConnection(@Min(1) @Max(100) @Argument Integer first, @Argument String after,
+                                                @Min(1) @Max(100) @Argument Integer last, @Argument String before,
+                                                DataFetchingFieldSelectionSet selectionSet){
+        return this.postService.getPostsConnection(first, after, last, before,
+                PostProjection.of(selectionSet.contains("edges/node/content")));
+    }
+    @QueryMapping("searchPosts")
+    public Flux<Post> searchPosts(@Valid @Argument PostFilter filter, @Valid @Argument List<PostSort> sort,
+                                  @Min(1) @Max(100) @Argument int first,
+                                  DataFetchingFieldSelectionSet selectionSet){
+        log.info(REQUEST,"Search posts - filter - {} - sort - {} - first - {}",LogFields.truncated(filter),sort,first);
+        return this.postService.searchPosts(filter, sort, first, PostProjection.of(selectionSet.contains("content")));
+    }
+    @QueryMapping("searchPostsByText")
+    public Mono<PostConnection> searchPostsByText(@NotBlank @Size(max=MAX_SEARCH_QUERY_LENGTH) @Argument String query,
+                                                  @Min(1) @Max(100) @Argument int first, @Argument String after){
+        log.info(REQUEST,"Full-text search - query - {} - first - {}",query,first);
+        return this.postService.searchPostsByText(query, first, after);
     }
     @QueryMapping("getAllPosts")
-    public Flux<Post> getAllPosts(){
-        log.info("Get all posts using 'getAllPosts' query");
-        return this.postService.getAllPosts();
+    public Flux<Post> getAllPosts(DataFetchingFieldSelectionSet selectionSet){
+        log.info(REQUEST,"Get all posts using 'getAllPosts' query");
+        return this.postService.getAllPosts(PostProjection.of(selectionSet.contains("content")));
+    }
+    @SubscriptionMapping("streamPosts")
+    public Flux<List<Post>> streamPosts(@Min(1) @Max(100) @Argument Integer chunkSize,
+                                        DataFetchingFieldSelectionSet selectionSet){
+        log.info(REQUEST,"Stream all posts using 'streamPosts' subscription");
+        return this.postService.streamAllPosts(PostProjection.of(selectionSet.contains("content"))).buffer(chunkSize==null ? DEFAULT_STREAM_CHUNK_SIZE : chunkSize);
+    }
+    @SubscriptionMapping("postAdded")
+    public Flux<Post> postAdded(){
+        log.info(REQUEST,"Subscribing to added posts");
+        return this.postEventHub.subscribe(PostEvent.Type.ADDED, post -> true);
+    }
+    @SubscriptionMapping("postUpdated")
+    public Flux<Post> postUpdated(@NotNull(message="{id.not.null}") @Argument Long id){
+        log.info(REQUEST,"Subscribing to updates of post id - {}",id);
+        return this.postEventHub.subscribe(PostEvent.Type.UPDATED, post -> id.equals(post.getId()));
+    }
+    @SubscriptionMapping("postDeleted")
+    public Flux<Post> postDeleted(){
+        log.info(REQUEST,"Subscribing to deleted posts");
+        return this.postEventHub.subscribe(PostEvent.Type.DELETED, post -> true);
     }
     @MutationMapping("addPost")
     @PreAuthorize("(hasAuthority('SCOPE_profile'))")
     public Mono<Post> addPost(@Valid @Argument PostInput postInput){
-        log.info("Add post - input - "+postInput);
+        log.info(REQUEST,"Add post - input - {}",postInput);
         return this.postService.addPost(postInput);
     }
     @QueryMapping("getPostById")
-    public Mono<Post> getPostById(@NotNull(message="{id.not.null}") @Argument Long id){
-        log.info("Inside getPostById - id - "+ id);
-        return this.postService.getPostById(id);
+    public Mono<Post> getPostById(@NotNull(message="{id.not.null}") @Argument Long id, DataLoader<Long, Post> postLoader){
+        log.info(REQUEST,"Inside getPostById - id - {}",id);
+        return Mono.fromFuture(postLoader.load(id))
+                .switchIfEmpty(Mono.error(() -> new PostNotFoundException("No post found for id - "+id)));
     }
     @MutationMapping("updatePost")
     @PreAuthorize("(hasAuthority('SCOPE_profile'))")
-    public Mono<Post> updatePost(@NotNull(message="{id.not.null}") @Argument Long id,@Valid @Argument PostInput postInput){
-        log.info("Updating post for id - {} with input - {}",id,postInput);
-        return this.postService.updatePost(id,postInput);
+    public Mono<Post> updatePost(@NotNull(message="{id.not.null}") @Argument Long id,@Valid @Argument PostInput postInput,@Argument Long version){
+        log.info(REQUEST,"Updating post for id - {} with input - {}",id,postInput);
+        return this.postService.updatePost(id,postInput,version);
+    }
+    @MutationMapping("addPosts")
+    @PreAuthorize("(hasAuthority('SCOPE_profile'))")
+    public Mono<List<Post>> addPosts(@NotEmpty @Size(max=MAX_BATCH_SIZE) @Valid @Argument List<PostInput> postInputs){
+        log.info(REQUEST,"Add posts - count - {}",postInputs.size());
+        return this.postService.addPosts(postInputs);
+    }
+    @MutationMapping("updatePosts")
+    @PreAuthorize("(hasAuthority('SCOPE_profile'))")
+    public Mono<List<Post>> updatePosts(@NotEmpty @Size(max=MAX_BATCH_SIZE) @Valid @Argument List<PostUpdateInput> postUpdates){
+        log.info(REQUEST,"Update posts - count - {}",postUpdates.size());
+        return this.postService.updatePosts(postUpdates);
+    }
+    @MutationMapping("deletePosts")
+    @PreAuthorize("(hasAuthority('SCOPE_profile'))")
+    public Mono<List<Post>> deletePosts(@NotEmpty @Size(max=MAX_BATCH_SIZE) @Argument List<Long> ids,
+                                        DataFetchingFieldSelectionSet selectionSet){
+        log.info(REQUEST,"Delete posts - count - {}",ids.size());
+        return this.postService.deletePosts(ids, PostProjection.of(selectionSet.contains("content")));
+    }
+    @MutationMapping("reindexPosts")
+    @PreAuthorize("(hasAuthority('SCOPE_profile'))")
+    public Mono<Long> reindexPosts(){
+        log.info(REQUEST,"Reindex posts");
+        return this.postService.reindexPosts();
+    }
+    @MutationMapping("appendPostContent")
+    @PreAuthorize("(hasAuthority('SCOPE_profile'))")
+    public Mono<Post> appendPostContent(@NotNull(message="{id.not.null}") @Argument Long id,
+                                        @NotNull @Size(min=1,max=MAX_CONTENT_CHUNK) @Argument String chunk,
+                                        DataFetchingFieldSelectionSet selectionSet){
+        return this.postService.appendPostContent(id, chunk, PostProjection.of(selectionSet.contains("content")));
+    }
+    /**
+     * Posts read by id come without content; theirs is only loaded when selected, for all the
+     * posts of one request together.
+     */
+    @SchemaMapping(typeName="Post", field="content")
+    public Mono<String> content(Post post, DataLoader<Long, String> postContent){
+        if(post.getContent()!=null || post.getContentLength()==null){
+            return Mono.justOrEmpty(post.getContent());
+        }
+        if(post.getContentLength()==0){
+            return Mono.just("");
+        }
+        return Mono.fromFuture(postContent.load(post.getId()));
+    }
+    /**
+     * Lengths come with the post row; the posts of one request that lack it are looked up together.
+     */
+    @BatchMapping(typeName="Post", field="contentLength")
+    public Mono<Map<Post, Integer>> contentLength(List<Post> posts){
+        Map<Post, Integer> lengths = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for(Post post : posts){
+            if(post.getContent()!=null){
+                lengths.put(post, post.getContent().length());
+            }
+            else if(post.getContentLength()!=null){
+                lengths.put(post, post.getContentLength());
+            }
+            else{
+                missing.add(post.getId());
+            }
+        }
+        if(missing.isEmpty()){
+            return Mono.just(lengths);
+        }
+        return this.postService.getPostContentLengths(missing).map(found -> {
+            posts.stream().filter(post -> found.containsKey(post.getId()) && !lengths.containsKey(post))
+                    .forEach(post -> lengths.put(post, found.get(post.getId())));
+            return lengths;
+        });
+    }
+    /**
+     * Slices of posts whose content was not loaded go through a per-request DataLoader, so the
+     * slices selected on a whole page of posts are read with one query.
+     */
+    @SchemaMapping(typeName="Post", field="contentSlice")
+    public Mono<String> contentSlice(Post post, @Min(0) @Argument int offset,
+                                     @Min(1) @Max(MAX_CONTENT_CHUNK) @Argument int length,
+                                     DataLoader<PostContentSlice, String> postContentSlice){
+        String content = post.getContent();
+        if(content!=null){
+            int start = Math.min(offset, content.length());
+            return Mono.just(content.substring(start, Math.min(content.length(), start+length)));
+        }
+        return Mono.fromFuture(postContentSlice.load(new PostContentSlice(post.getId(), offset, length)))
+                .switchIfEmpty(Mono.error(() -> new PostNotFoundException("No post found for id - "+post.getId())));
     }
     @MutationMapping("deletePost")
     @PreAuthorize("(hasAuthority('SCOPE_profile'))")
-    public Mono<Post> deletePost(@NotNull(message="{id.not.null}") @Argument Long id){
-        log.info("Deleting post with id - "+id);
-        return this.postService.deletePost(id);
+    public Mono<Post> deletePost(@NotNull(message="{id.not.null}") @Argument Long id, DataFetchingFieldSelectionSet selectionSet){
+        log.info(REQUEST,"Deleting post with id - {}",id);
+        return this.postService.deletePost(id, PostProjection.of(selectionSet.contains("content")));
     }
 }
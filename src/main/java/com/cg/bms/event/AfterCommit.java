@@ -0,0 +1,40 @@
+package com.cg.bms.event;
+
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+import java.util.function.Supplier;
+
+/**
+ * Runs an action once the surrounding reactive transaction commits, or straight away when there
+ * is none. A rolled-back transaction never runs it.
+ */
+public final class AfterCommit {
+    private AfterCommit(){
+    }
+
+    public static Mono<Void> run(Runnable action){
+        return run(() -> Mono.fromRunnable(action));
+    }
+
+    /**
+     * Defers an asynchronous action the same way; the commit completes once the action has.
+     */
+    public static Mono<Void> run(Supplier<? extends Mono<?>> action){
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(TransactionSynchronizationManager::isSynchronizationActive)
+                .map(manager -> {
+                    manager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCommit() {
+                            return Mono.defer(action).then();
+                        }
+                    });
+                    return true;
+                })
+                .onErrorResume(NoTransactionException.class, ex -> Mono.empty())
+                .switchIfEmpty(Mono.defer(action).thenReturn(true))
+                .then();
+    }
+}
@@ -0,0 +1,58 @@
+package com.cg.bms.event;
+
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostChange;
+import com.cg.bms.repository.PostChangeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+/**
+ * Records post changes in the {@code post_changes} outbox and announces them to this node's
+ * subscribers. Call it inside the transaction that makes the change, so the outbox row commits or
+ * rolls back with it; the other nodes pick the row up through their {@code PostChangeTailer}.
+ */
+@Component
+public class PostChangeLog {
+    private final PostChangeRepository postChangeRepository;
+    private final PostEventHub postEventHub;
+    private final PostDataVersion postDataVersion;
+    private final String nodeId;
+
+    @Autowired
+    public PostChangeLog(PostChangeRepository postChangeRepository, PostEventHub postEventHub, PostDataVersion postDataVersion,
+                         @Value("${bms.changes.node-id:#{T(java.util.UUID).randomUUID().toString()}}") String nodeId){
+        this.postChangeRepository=postChangeRepository;
+        this.postEventHub=postEventHub;
+        this.postDataVersion=postDataVersion;
+        this.nodeId=nodeId;
+    }
+
+    public String getNodeId(){
+        return nodeId;
+    }
+
+    public Mono<Void> added(Collection<Post> posts){
+        return record(PostEvent.Type.ADDED, posts).then(this.postEventHub.added(posts));
+    }
+
+    public Mono<Void> updated(Collection<Post> posts){
+        return record(PostEvent.Type.UPDATED, posts).then(this.postEventHub.updated(posts));
+    }
+
+    public Mono<Void> deleted(Collection<Post> posts){
+        return record(PostEvent.Type.DELETED, posts).then(this.postEventHub.deleted(posts));
+    }
+
+    private Mono<Void> record(PostEvent.Type type, Collection<Post> posts){
+        OffsetDateTime changedAt = OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        return this.postChangeRepository.insertAll(posts.stream().map(post -> PostChange.of(type, post, nodeId, changedAt)).toList())
+                .reduce(Math::max)
+                .flatMap(changeId -> AfterCommit.run(() -> this.postDataVersion.committedLocally(changeId)));
+    }
+}
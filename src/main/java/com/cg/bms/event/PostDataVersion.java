@@ -0,0 +1,65 @@
+package com.cg.bms.event;
+
+import org.springframework.stereotype.Component;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the post data this node serves, for HTTP validators such as ETags. It changes
+ * whenever this node's view of the posts may have changed, and never before.
+ * <p>
+ * The version follows the {@code post_changes} outbox as applied by {@code PostChangeTailer}: a
+ * remote change only counts once it has been applied here, so a response built from an evicted
+ * cache entry is never labelled with a version that claims otherwise. Nodes that have applied the
+ * same changes report the same version. This node's own changes are applied as they commit, so
+ * they count straight away, until the tailer has caught up with them. The tailer reads the outbox
+ * from the replica, so until then the replica may not have them: reads that are labelled with this
+ * version have to go to the primary while {@link #isAheadOfReplica()}.
+ */
+@Component
+public class PostDataVersion {
+    private final AtomicLong localChangeId = new AtomicLong();
+    private volatile Applied applied;
+
+    /**
+     * Empty until the tailer has read the outbox for the first time.
+     */
+    public Optional<String> current(){
+        Applied current = applied;
+        if(current==null){
+            return Optional.empty();
+        }
+        long local = localChangeId.get();
+        return Optional.of(local>current.watermark() ? current.version()+"."+local : current.version());
+    }
+
+    /**
+     * Every change up to {@code watermark} has been applied, as have the changes
+     * {@code appliedAboveWatermark}.
+     */
+    public void applied(long watermark, Collection<Long> appliedAboveWatermark){
+        String version = Long.toString(watermark);
+        if(!appliedAboveWatermark.isEmpty()){
+            long[] above = appliedAboveWatermark.stream().mapToLong(Long::longValue).sorted().toArray();
+            version += "+"+Integer.toHexString(Arrays.hashCode(above));
+        }
+        this.applied = new Applied(watermark, version);
+    }
+
+    /**
+     * Whether this node has committed a change that the replica has not been seen to apply yet.
+     */
+    public boolean isAheadOfReplica(){
+        Applied current = applied;
+        return current!=null && localChangeId.get()>current.watermark();
+    }
+
+    public void committedLocally(long changeId){
+        localChangeId.accumulateAndGet(changeId, Math::max);
+    }
+
+    private record Applied(long watermark, String version) {
+    }
+}
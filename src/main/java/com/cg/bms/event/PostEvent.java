@@ -0,0 +1,14 @@
+package com.cg.bms.event;
+
+import com.cg.bms.model.Post;
+
+/**
+ * A committed change to one post, as published to subscribers.
+ */
+public record PostEvent(Type type, Post post) {
+    public enum Type {
+        ADDED,
+        UPDATED,
+        DELETED
+    }
+}
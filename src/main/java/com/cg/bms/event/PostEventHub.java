@@ -0,0 +1,76 @@
+package com.cg.bms.event;
+
+import com.cg.bms.model.Post;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Fans post changes out to GraphQL subscribers, so clients can be told about new, changed and
+ * deleted posts instead of polling for them.
+ * <p>
+ * All subscribers share one multicast sink. Each subscriber has its own buffer of
+ * {@code bms.subscriptions.buffer-size} events; when a slow subscriber's buffer is full its oldest
+ * event is dropped, so it stays on the latest changes and never holds up the others or the
+ * mutation that published. Dropped events are counted by {@code bms.subscriptions.dropped}.
+ * <p>
+ * Changes made inside a transaction are published once it commits, so subscribers never see a
+ * change that was rolled back.
+ */
+@Component
+public class PostEventHub {
+    private static final Duration EMIT_CONTENTION_TIMEOUT = Duration.ofMillis(100);
+    private final Sinks.Many<PostEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final int bufferSize;
+    private final Counter dropped;
+
+    @Autowired
+    public PostEventHub(@Value("${bms.subscriptions.buffer-size:256}") int bufferSize, MeterRegistry meterRegistry){
+        this.bufferSize=bufferSize;
+        this.dropped=Counter.builder("bms.subscriptions.dropped")
+                .description("Post events dropped because a subscriber fell behind")
+                .register(meterRegistry);
+        Gauge.builder("bms.subscriptions.active", sink, Sinks.Many::currentSubscriberCount)
+                .description("Open post change subscriptions")
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> added(Collection<Post> posts){
+        return publish(PostEvent.Type.ADDED, posts);
+    }
+
+    public Mono<Void> updated(Collection<Post> posts){
+        return publish(PostEvent.Type.UPDATED, posts);
+    }
+
+    public Mono<Void> deleted(Collection<Post> posts){
+        return publish(PostEvent.Type.DELETED, posts);
+    }
+
+    /**
+     * The posts of every later event of the given type that match the filter. The filter runs
+     * before buffering, so only matching events take up the subscriber's buffer.
+     */
+    public Flux<Post> subscribe(PostEvent.Type type, Predicate<Post> filter){
+        return sink.asFlux()
+                .filter(event -> event.type()==type && filter.test(event.post()))
+                .map(PostEvent::post)
+                .onBackpressureBuffer(bufferSize, post -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private Mono<Void> publish(PostEvent.Type type, Collection<Post> posts){
+        Runnable emit = () -> posts.forEach(post -> sink.emitNext(new PostEvent(type, post),
+                Sinks.EmitFailureHandler.busyLooping(EMIT_CONTENTION_TIMEOUT)));
+        return AfterCommit.run(emit);
+    }
+}
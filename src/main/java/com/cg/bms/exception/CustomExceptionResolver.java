@@ -7,6 +7,7 @@ import graphql.schema.DataFetchingEnvironment;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.graphql.execution.DataFetcherExceptionResolverAdapter;
 import org.springframework.stereotype.Component;
+import java.util.Map;
 
 @Component
 public class CustomExceptionResolver extends DataFetcherExceptionResolverAdapter {
@@ -28,7 +29,7 @@ public class CustomExceptionResolver extends DataFetcherExceptionResolverAdapter
                     .location(env.getField().getSourceLocation())
                     .build();
         }
-        else if(ex instanceof DuplicatePostException){
+        else if(ex instanceof DuplicatePostException || ex instanceof PostVersionConflictException){
             return GraphqlErrorBuilder.newError()
                     .errorType(ErrorType.DataFetchingException)
                     .message((ex.getMessage()))
@@ -36,6 +37,24 @@ public class CustomExceptionResolver extends DataFetcherExceptionResolverAdapter
                     .location(env.getField().getSourceLocation())
                     .build();
         }
+        else if(ex instanceof InvalidPaginationException || ex instanceof PostContentTooLargeException
+                || ex instanceof InvalidSearchQueryException || ex instanceof QueryComplexityException){
+            return GraphqlErrorBuilder.newError()
+                    .errorType(ErrorType.ValidationError)
+                    .message(ex.getMessage())
+                    .path(env.getExecutionStepInfo().getPath())
+                    .location(env.getField().getSourceLocation())
+                    .build();
+        }
+        else if(ex instanceof QueryBudgetExceededException || ex instanceof DatabaseBusyException){
+            return GraphqlErrorBuilder.newError()
+                    .errorType(ErrorType.ExecutionAborted)
+                    .message(ex.getMessage())
+                    .extensions(Map.of("retryable", true))
+                    .path(env.getExecutionStepInfo().getPath())
+                    .location(env.getField().getSourceLocation())
+                    .build();
+        }
         else{
             return null;
         }
@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class DatabaseBusyException extends RuntimeException{
+    public DatabaseBusyException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class InvalidPaginationException extends RuntimeException{
+    public InvalidPaginationException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class InvalidSearchQueryException extends RuntimeException{
+    public InvalidSearchQueryException(String message){
+        super(message);
+    }
+}
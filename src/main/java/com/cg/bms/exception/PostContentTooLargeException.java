@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class PostContentTooLargeException extends RuntimeException{
+    public PostContentTooLargeException(String message){
+        super(message);
+    }
+}
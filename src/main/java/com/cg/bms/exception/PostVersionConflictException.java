@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class PostVersionConflictException extends RuntimeException{
+    public PostVersionConflictException(String message){
+        super(message);
+    }
+}
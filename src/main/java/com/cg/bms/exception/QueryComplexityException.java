@@ -0,0 +1,7 @@
+package com.cg.bms.exception;
+
+public class QueryComplexityException extends RuntimeException{
+    public QueryComplexityException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,112 @@
+package com.cg.bms.graphql;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.ErrorType;
+import graphql.ExecutionInput;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.UnknownOperationException;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.ApolloPersistedQuerySupport;
+import graphql.execution.preparsed.persisted.PersistedQueryCache;
+import graphql.execution.preparsed.persisted.PersistedQueryCacheMiss;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.language.Document;
+import graphql.language.NodeUtil;
+import graphql.language.OperationDefinition;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Skips parsing and validation for operations the server has already seen.
+ * <p>
+ * Operations sent as text are cached by their text. Operations sent as an Automatic Persisted
+ * Query (an {@code extensions.persistedQuery.sha256Hash} without the text) are resolved from a
+ * second cache keyed by the hash; a client whose hash is unknown gets a {@code PersistedQueryNotFound}
+ * error and retries with the text, which is checked against the hash before it is stored. Both
+ * caches are bounded and publish the {@code cache.*} meters, tagged {@code cache=graphql.documents}
+ * and {@code cache=graphql.persisted-queries}.
+ * <p>
+ * Operations marked {@link #QUERIES_ONLY} in their GraphQL context, such as those sent with HTTP
+ * GET, fail with {@code OperationNotSupported} unless the selected operation is a query.
+ */
+public class CachingPreparsedDocumentProvider implements PreparsedDocumentProvider {
+    public static final String DOCUMENTS = "graphql.documents";
+    public static final String PERSISTED_QUERIES = "graphql.persisted-queries";
+    public static final String QUERIES_ONLY = "bms.queriesOnly";
+    private final Cache<String, PreparsedDocumentEntry> documents;
+    private final PersistedQuerySupport persistedQuerySupport;
+
+    public CachingPreparsedDocumentProvider(long maximumDocuments, long maximumPersistedQueries, MeterRegistry meterRegistry){
+        this.documents = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumDocuments)
+                .recordStats()
+                .<String, PreparsedDocumentEntry>build(), DOCUMENTS);
+        this.persistedQuerySupport = new ApolloPersistedQuerySupport(new CaffeinePersistedQueryCache(
+                CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                        .maximumSize(maximumPersistedQueries)
+                        .recordStats()
+                        .<Object, PreparsedDocumentEntry>build(), PERSISTED_QUERIES)));
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+                                                                      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return persistedQuerySupport.getDocumentAsync(executionInput,
+                        input -> documents.get(input.getQuery(), query -> parseAndValidateFunction.apply(input)))
+                .thenApply(entry -> rejectNonQueries(executionInput, entry));
+    }
+
+    /**
+     * Still abstract in graphql-java 20; the engine itself only calls {@link #getDocumentAsync}.
+     */
+    @Override
+    @Deprecated
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return getDocumentAsync(executionInput, parseAndValidateFunction).join();
+    }
+
+    private static PreparsedDocumentEntry rejectNonQueries(ExecutionInput executionInput, PreparsedDocumentEntry entry){
+        if(Boolean.TRUE.equals(executionInput.getGraphQLContext().get(QUERIES_ONLY)) && !entry.hasErrors()
+                && !isQuery(entry.getDocument(), executionInput.getOperationName())){
+            return new PreparsedDocumentEntry(GraphqlErrorBuilder.newError()
+                    .errorType(ErrorType.OperationNotSupported)
+                    .message("Only queries can be sent with GET")
+                    .build());
+        }
+        return entry;
+    }
+
+    private static boolean isQuery(Document document, String operationName){
+        try{
+            return NodeUtil.getOperation(document, operationName).operationDefinition.getOperation()==OperationDefinition.Operation.QUERY;
+        }
+        catch(UnknownOperationException ex){
+            // left to execution, which reports the unknown operation
+            return true;
+        }
+    }
+
+    private record CaffeinePersistedQueryCache(Cache<Object, PreparsedDocumentEntry> cache) implements PersistedQueryCache {
+        // Deprecated in favour of the async variant, but it is the one PersistedQuerySupport calls in graphql-java 20.
+        @Override
+        @Deprecated
+        public PreparsedDocumentEntry getPersistedQueryDocument(Object persistedQueryId, ExecutionInput executionInput,
+                                                                PersistedQueryCacheMiss onCacheMiss) throws PersistedQueryNotFound {
+            PreparsedDocumentEntry entry = cache.getIfPresent(persistedQueryId);
+            if(entry!=null){
+                return entry;
+            }
+            String query = executionInput.getQuery();
+            if(PersistedQuerySupport.PERSISTED_QUERY_MARKER.equals(query)){
+                throw new PersistedQueryNotFound(persistedQueryId);
+            }
+            // the hash is checked by onCacheMiss, which throws before anything is stored
+            return cache.get(persistedQueryId, id -> onCacheMiss.apply(query));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.cg.bms.graphql;
+
+import com.cg.bms.event.PostDataVersion;
+import com.cg.bms.routing.ConnectionRoute;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.ErrorType;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import org.springframework.core.env.Environment;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Serves GraphQL queries sent with HTTP GET, as {@code query}, {@code operationName},
+ * {@code variables} and {@code extensions} URL parameters, so browsers and CDNs can cache them.
+ * Automatic Persisted Queries work the same as over POST, which keeps the URLs short.
+ * <p>
+ * Responses carry a strong ETag computed from the request parameters and the
+ * {@link PostDataVersion}. A request whose {@code If-None-Match} still matches gets a 304 before
+ * the operation is parsed or any resolver or query runs. While that version counts a local change
+ * the replica may not have yet, the query reads from the primary, so a new tag never comes with
+ * a body that lacks the change. The {@code Cache-Control} header is
+ * {@code bms.graphql.cache-control.operations.<operationName>}, falling back to
+ * {@code bms.graphql.cache-control.default}. Responses with errors are neither tagged nor cached.
+ * Mutations and subscriptions are rejected with 405, as they must be sent with POST.
+ */
+public class GraphQlGetHandler {
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {};
+    private final WebGraphQlHandler webGraphQlHandler;
+    private final PostDataVersion postDataVersion;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final String defaultCacheControl;
+
+    public GraphQlGetHandler(WebGraphQlHandler webGraphQlHandler, PostDataVersion postDataVersion, ObjectMapper objectMapper,
+                             Environment environment, String defaultCacheControl){
+        this.webGraphQlHandler=webGraphQlHandler;
+        this.postDataVersion=postDataVersion;
+        this.objectMapper=objectMapper;
+        this.environment=environment;
+        this.defaultCacheControl=defaultCacheControl;
+    }
+
+    public Mono<ServerResponse> handleRequest(ServerRequest request){
+        String query = request.queryParam("query").orElse(null);
+        String operationName = request.queryParam("operationName").filter(StringUtils::hasText).orElse(null);
+        Map<String, Object> variables;
+        Map<String, Object> extensions;
+        try{
+            variables = json(request, "variables");
+            extensions = json(request, "extensions");
+        }
+        catch(JsonProcessingException ex){
+            return ServerResponse.badRequest().bodyValue(ex.getOriginalMessage());
+        }
+        if(!StringUtils.hasText(query)){
+            if(!(extensions.get("persistedQuery") instanceof Map)){
+                return ServerResponse.badRequest().bodyValue("No query");
+            }
+            query = PersistedQuerySupport.PERSISTED_QUERY_MARKER;
+        }
+        String cacheControl = operationName==null ? defaultCacheControl
+                : environment.getProperty("bms.graphql.cache-control.operations."+operationName, defaultCacheControl);
+        Optional<String> etag = postDataVersion.current().map(version -> etag(version, request));
+        // Checked after the version is read, so a local change counted in the tag is also in the body.
+        boolean readPrimary = postDataVersion.isAheadOfReplica();
+        if(etag.isPresent() && matches(request.headers().header(HttpHeaders.IF_NONE_MATCH), etag.get())){
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("query", query);
+        body.put("operationName", operationName);
+        body.put("variables", variables);
+        body.put("extensions", extensions);
+        WebGraphQlRequest graphQlRequest = new WebGraphQlRequest(request.uri(), request.headers().asHttpHeaders(), request.cookies(),
+                request.attributes(), body, request.exchange().getRequest().getId(), request.exchange().getLocaleContext().getLocale());
+        graphQlRequest.configureExecutionInput((input, builder) -> {
+            input.getGraphQLContext().put(CachingPreparsedDocumentProvider.QUERIES_ONLY, true);
+            return input;
+        });
+        Mono<WebGraphQlResponse> execution = this.webGraphQlHandler.handleRequest(graphQlRequest);
+        if(readPrimary){
+            execution = execution.contextWrite(Context.of(ConnectionRoute.class, ConnectionRoute.PRIMARY));
+        }
+        return execution.flatMap(response -> {
+            if(response.getErrors().stream().anyMatch(error -> error.getErrorType()==ErrorType.OperationNotSupported)){
+                return ServerResponse.status(HttpStatus.METHOD_NOT_ALLOWED).allow(HttpMethod.POST)
+                        .contentType(MediaType.APPLICATION_JSON).bodyValue(response.toMap());
+            }
+            ServerResponse.BodyBuilder builder = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+            if(etag.isPresent() && response.getErrors().isEmpty()){
+                builder.eTag(etag.get()).header(HttpHeaders.CACHE_CONTROL, cacheControl);
+            }
+            else{
+                builder.header(HttpHeaders.CACHE_CONTROL, "no-store");
+            }
+            return builder.bodyValue(response.toMap());
+        });
+    }
+
+    private Map<String, Object> json(ServerRequest request, String name) throws JsonProcessingException {
+        Optional<String> value = request.queryParam(name).filter(StringUtils::hasText);
+        return value.isPresent() ? objectMapper.readValue(value.get(), JSON_OBJECT) : Collections.emptyMap();
+    }
+
+    /**
+     * Differently spelled but equivalent requests get different tags, which only costs a refetch.
+     */
+    private static String etag(String version, ServerRequest request){
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            for(String name : List.of("query", "operationName", "variables", "extensions")){
+                digest.update((byte) 0);
+                digest.update(request.queryParam(name).orElse("").getBytes(StandardCharsets.UTF_8));
+            }
+            return "\""+Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest())+"\"";
+        }
+        catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag){
+        return ifNoneMatch.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .anyMatch(candidate -> candidate.equals(etag) || candidate.equals("*"));
+    }
+}
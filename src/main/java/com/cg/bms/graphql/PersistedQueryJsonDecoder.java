@@ -0,0 +1,44 @@
+package com.cg.bms.graphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON decoder that lets Automatic Persisted Query requests through the HTTP handler.
+ * <p>
+ * The handler rejects a request body without a {@code query}, but a persisted query request only
+ * carries the hash in {@code extensions.persistedQuery}. For such bodies the query is set to
+ * {@link PersistedQuerySupport#PERSISTED_QUERY_MARKER}, which {@link CachingPreparsedDocumentProvider}
+ * resolves from the hash. Every other body is returned as decoded.
+ */
+public class PersistedQueryJsonDecoder extends Jackson2JsonDecoder {
+    public PersistedQueryJsonDecoder(ObjectMapper objectMapper){
+        super(objectMapper);
+    }
+
+    @Override
+    public Object decode(DataBuffer dataBuffer, ResolvableType targetType,
+                         @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        Object value = super.decode(dataBuffer, targetType, mimeType, hints);
+        if(value instanceof Map<?, ?> body && isPersistedQueryWithoutDocument(body)){
+            Map<Object, Object> withMarker = new LinkedHashMap<>(body);
+            withMarker.put("query", PersistedQuerySupport.PERSISTED_QUERY_MARKER);
+            return withMarker;
+        }
+        return value;
+    }
+
+    private static boolean isPersistedQueryWithoutDocument(Map<?, ?> body){
+        return !(body.get("query") instanceof String query && StringUtils.hasText(query))
+                && body.get("extensions") instanceof Map<?, ?> extensions
+                && extensions.get("persistedQuery") instanceof Map;
+    }
+}
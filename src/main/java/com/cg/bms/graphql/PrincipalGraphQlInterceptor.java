@@ -0,0 +1,34 @@
+package com.cg.bms.graphql;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import java.util.Map;
+
+/**
+ * Puts the caller's name into the GraphQL context under {@link #PRINCIPAL_KEY}, where
+ * {@link QueryCostInstrumentation} reads it to charge the operation to the right budget.
+ */
+@Component
+public class PrincipalGraphQlInterceptor implements WebGraphQlInterceptor {
+    public static final String PRINCIPAL_KEY = PrincipalGraphQlInterceptor.class.getName() + ".principal";
+    public static final String ANONYMOUS = "anonymous";
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+        return ReactiveSecurityContextHolder.getContext()
+                .mapNotNull(SecurityContext::getAuthentication)
+                .map(Authentication::getName)
+                .defaultIfEmpty(ANONYMOUS)
+                .flatMap(principal -> {
+                    request.configureExecutionInput((input, builder) ->
+                            builder.graphQLContext(Map.of(PRINCIPAL_KEY, principal)).build());
+                    return chain.next(request);
+                });
+    }
+}
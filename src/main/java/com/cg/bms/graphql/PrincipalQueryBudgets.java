@@ -0,0 +1,46 @@
+package com.cg.bms.graphql;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-principal admission control: how many operations a principal may have executing at once
+ * and how much estimated cost they may add up to. An operation that would go over either limit is
+ * refused rather than queued, so one busy client cannot take the connection pool from the rest.
+ */
+@Component
+public class PrincipalQueryBudgets {
+    private final Map<String, Usage> usageByPrincipal = new ConcurrentHashMap<>();
+    @Value("${bms.graphql.budget.max-concurrent-operations:16}")
+    private int maxConcurrentOperations = 16;
+    @Value("${bms.graphql.budget.max-in-flight-cost:200000}")
+    private long maxInFlightCost = 200000;
+
+    /**
+     * Reserves one operation of the given cost, or returns false when the principal is at its limit.
+     * Every successful call must be paired with {@link #release}.
+     */
+    public boolean tryAcquire(String principal, long cost){
+        boolean[] admitted = {false};
+        usageByPrincipal.compute(principal, (key, current) -> {
+            Usage usage = current==null ? Usage.NONE : current;
+            if(usage.operations()>=maxConcurrentOperations || usage.cost()+cost>maxInFlightCost){
+                return current;
+            }
+            admitted[0]=true;
+            return new Usage(usage.operations()+1, usage.cost()+cost);
+        });
+        return admitted[0];
+    }
+
+    public void release(String principal, long cost){
+        usageByPrincipal.computeIfPresent(principal, (key, usage) ->
+                usage.operations()<=1 ? null : new Usage(usage.operations()-1, usage.cost()-cost));
+    }
+
+    private record Usage(int operations, long cost){
+        static final Usage NONE = new Usage(0, 0);
+    }
+}
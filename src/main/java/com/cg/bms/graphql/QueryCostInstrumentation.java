@@ -0,0 +1,232 @@
+package com.cg.bms.graphql;
+
+import com.cg.bms.exception.QueryBudgetExceededException;
+import com.cg.bms.exception.QueryComplexityException;
+import graphql.ExecutionResult;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.reactivestreams.Publisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Estimates what an operation will cost before any of it runs and refuses it when it is too
+ * expensive, too deep, or would take its principal over {@link PrincipalQueryBudgets}.
+ * <p>
+ * Each selected field costs 1, and {@code content} or {@code contentSlice} costs
+ * {@code bms.graphql.cost.content-weight}. A field that returns a page of posts multiplies the cost of
+ * its selection by the page size it asks for: {@code pageSize}, {@code first}/{@code last}, the
+ * number of inputs for batch mutations, or {@code bms.posts.max-results} for the unbounded
+ * {@code getAllPosts} and {@code streamPosts}. Aliases and fragments are counted every time they
+ * appear, so a document that repeats {@code getAllPosts} thirty times costs thirty times as much.
+ * <p>
+ * A refused operation fails its first root field with {@link QueryComplexityException} or
+ * {@link QueryBudgetExceededException}. That error goes through {@code CustomExceptionResolver}.
+ * The other root fields resolve to null without being fetched. Refusals are counted in
+ * {@code graphql.operations.rejected}, tagged by reason.
+ * <p>
+ * An admitted operation holds its share of the budget until its result is complete. For a
+ * subscription that is when the stream of results terminates or is cancelled, not when the
+ * stream is handed back.
+ */
+@Component
+public class QueryCostInstrumentation extends SimplePerformantInstrumentation {
+    public static final String REJECTED_METER = "graphql.operations.rejected";
+    private static final int DEFAULT_CONNECTION_SIZE = 10;
+    private final PrincipalQueryBudgets budgets;
+    private final MeterRegistry meterRegistry;
+    @Value("${bms.graphql.cost.max-cost:50000}")
+    private long maxCost = 50000;
+    @Value("${bms.graphql.cost.max-depth:15}")
+    private int maxDepth = 15;
+    @Value("${bms.graphql.cost.content-weight:10}")
+    private long contentWeight = 10;
+    @Value("${bms.posts.max-results:1000}")
+    private long maxResults = 1000;
+
+    public QueryCostInstrumentation(PrincipalQueryBudgets budgets, MeterRegistry meterRegistry){
+        this.budgets=budgets;
+        this.meterRegistry=meterRegistry;
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        return new CostState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) -> {
+            if(throwable!=null || !(result.getData() instanceof Publisher<?>)){
+                ((CostState) state).release(budgets);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        if(!(executionResult.getData() instanceof Publisher<?> results)){
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        return CompletableFuture.completedFuture(executionResult.transform(builder ->
+                builder.data(Flux.from(results).doFinally(signal -> ((CostState) state).release(budgets)))));
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        CostState costState = (CostState) state;
+        Estimate estimate = estimate(executionContext);
+        if(estimate.depth()>maxDepth){
+            costState.reject(new QueryComplexityException("Query depth "+estimate.depth()+" exceeds the limit of "+maxDepth), "depth");
+        }
+        else if(estimate.cost()>maxCost){
+            costState.reject(new QueryComplexityException("Query cost "+estimate.cost()+" exceeds the limit of "+maxCost), "cost");
+        }
+        else{
+            String principal = executionContext.getGraphQLContext().getOrDefault(PrincipalGraphQlInterceptor.PRINCIPAL_KEY, PrincipalGraphQlInterceptor.ANONYMOUS);
+            if(budgets.tryAcquire(principal, estimate.cost())){
+                costState.admit(principal, estimate.cost());
+            }
+            else{
+                costState.reject(new QueryBudgetExceededException("Too many concurrent or costly operations, retry later"), "budget");
+            }
+        }
+        if(costState.rejection!=null){
+            meterRegistry.counter(REJECTED_METER, "reason", costState.reason).increment();
+        }
+        return SimpleInstrumentationContext.noOp();
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters, InstrumentationState state) {
+        CostState costState = (CostState) state;
+        if(costState.rejection==null || parameters.getExecutionStepInfo().getPath().getLevel()!=1){
+            return dataFetcher;
+        }
+        return environment -> {
+            if(costState.reported.compareAndSet(false, true)){
+                throw costState.rejection;
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Walks the operation bottom-up: a field's cost is its own weight plus its selection's cost
+     * times its page size.
+     */
+    Estimate estimate(ExecutionContext executionContext){
+        Map<QueryVisitorFieldEnvironment, Long> selectionCost = new HashMap<>();
+        long[] maxFieldDepth = {0};
+        QueryTraverser.newQueryTraverser()
+                .schema(executionContext.getGraphQLSchema())
+                .document(executionContext.getDocument())
+                .operationName(executionContext.getOperationDefinition().getName())
+                .coercedVariables(executionContext.getCoercedVariables())
+                .build()
+                .visitPostOrder(new QueryVisitorStub(){
+                    @Override
+                    public void visitField(QueryVisitorFieldEnvironment environment) {
+                        if(environment.isTypeNameIntrospectionField()){
+                            return;
+                        }
+                        long cost = saturatedAdd(weight(environment),
+                                saturatedMultiply(pageSize(environment), selectionCost.getOrDefault(environment, 0L)));
+                        selectionCost.merge(environment.getParentEnvironment(), cost, QueryCostInstrumentation::saturatedAdd);
+                        maxFieldDepth[0] = Math.max(maxFieldDepth[0], depth(environment));
+                    }
+                });
+        return new Estimate(selectionCost.getOrDefault(null, 0L), (int) maxFieldDepth[0]);
+    }
+
+    private long weight(QueryVisitorFieldEnvironment environment){
+        String name = environment.getField().getName();
+        return name.equals("content") || name.equals("contentSlice") ? contentWeight : 1;
+    }
+
+    private long pageSize(QueryVisitorFieldEnvironment environment){
+        Map<String, Object> arguments = environment.getArguments();
+        return switch(environment.getField().getName()){
+            case "getAllPosts", "streamPosts" -> maxResults;
+            case "getPosts" -> Math.min(intArgument(arguments, "pageSize", maxResults), maxResults);
+            case "postsConnection" -> intArgument(arguments, "first", intArgument(arguments, "last", DEFAULT_CONNECTION_SIZE));
+            case "searchPosts", "searchPostsByText" -> intArgument(arguments, "first", DEFAULT_CONNECTION_SIZE);
+            case "addPosts" -> listArgumentSize(arguments, "postInputs");
+            case "updatePosts" -> listArgumentSize(arguments, "postUpdates");
+            case "deletePosts" -> listArgumentSize(arguments, "ids");
+            default -> 1;
+        };
+    }
+
+    private static long intArgument(Map<String, Object> arguments, String name, long defaultValue){
+        return arguments.get(name) instanceof Number number ? Math.max(number.longValue(), 0) : defaultValue;
+    }
+
+    private static long listArgumentSize(Map<String, Object> arguments, String name){
+        return arguments.get(name) instanceof Collection<?> values ? values.size() : 1;
+    }
+
+    private static int depth(QueryVisitorFieldEnvironment environment){
+        int depth = 0;
+        for(QueryVisitorFieldEnvironment current = environment; current!=null; current = current.getParentEnvironment()){
+            depth++;
+        }
+        return depth;
+    }
+
+    private static long saturatedAdd(long a, long b){
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b){
+        long high = Math.multiplyHigh(a, b);
+        return high != 0 || a * b < 0 ? Long.MAX_VALUE : a * b;
+    }
+
+    record Estimate(long cost, int depth){}
+
+    private static class CostState implements InstrumentationState {
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private RuntimeException rejection;
+        private String reason;
+        private String principal;
+        private long cost;
+
+        void reject(RuntimeException rejection, String reason){
+            this.rejection=rejection;
+            this.reason=reason;
+        }
+
+        void admit(String principal, long cost){
+            this.principal=principal;
+            this.cost=cost;
+        }
+
+        synchronized void release(PrincipalQueryBudgets budgets){
+            if(principal!=null){
+                budgets.release(principal, cost);
+                principal=null;
+            }
+        }
+    }
+}
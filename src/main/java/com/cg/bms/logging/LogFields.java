@@ -0,0 +1,27 @@
+package com.cg.bms.logging;
+
+/**
+ * Log arguments that render a bounded amount of text. They are only formatted when the log line is
+ * actually written.
+ */
+public final class LogFields {
+    public static final int MAX_VALUE_LENGTH = 200;
+
+    private LogFields(){
+    }
+
+    /**
+     * Renders the value's {@code toString()} cut to {@link #MAX_VALUE_LENGTH} characters, with the
+     * original length appended when it was cut.
+     */
+    public static Object truncated(Object value){
+        return new Object(){
+            @Override
+            public String toString() {
+                String text = String.valueOf(value);
+                return text.length()<=MAX_VALUE_LENGTH ? text
+                        : text.substring(0, MAX_VALUE_LENGTH) + "...(" + text.length() + " chars)";
+            }
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.cg.bms.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many per-request log lines are written each second. Statements marked with
+ * {@link #REQUEST} at INFO or below are let through until {@code permitsPerSecond} have been
+ * written in the current second and dropped after that; everything else passes untouched.
+ * <p>
+ * Being a turbo filter, it runs before Logback creates the event or formats its arguments, so a
+ * dropped line costs a counter increment. Configured in {@code logback-spring.xml}.
+ */
+public class RequestLogSamplingFilter extends TurboFilter {
+    public static final Marker REQUEST = MarkerFactory.getMarker("REQUEST");
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long permitsPerSecond = 100;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if(marker==null || !marker.contains(REQUEST) || level==null || level.isGreaterOrEqual(Level.WARN)){
+            return FilterReply.NEUTRAL;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if(now-start>=WINDOW_NANOS && windowStart.compareAndSet(start, now)){
+            written.set(0);
+        }
+        if(written.incrementAndGet()<=permitsPerSecond){
+            return FilterReply.NEUTRAL;
+        }
+        dropped.incrementAndGet();
+        return FilterReply.DENY;
+    }
+
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    public void setPermitsPerSecond(long permitsPerSecond){
+        this.permitsPerSecond=permitsPerSecond;
+    }
+}
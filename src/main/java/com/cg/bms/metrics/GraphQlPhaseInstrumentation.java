@@ -0,0 +1,56 @@
+package com.cg.bms.metrics;
+
+import graphql.ExecutionResult;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationValidationParameters;
+import graphql.language.Document;
+import graphql.validation.ValidationError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import java.util.List;
+
+/**
+ * Times the parse, validate and execute phases of every GraphQL operation as {@code graphql.phase},
+ * tagged with the phase and the operation name. Parse and validate only show up when the document
+ * was not found in the parsed-document cache. The number of distinct operation names is capped in
+ * {@code MetricsConfig}.
+ */
+@Component
+public class GraphQlPhaseInstrumentation extends SimplePerformantInstrumentation {
+    public static final String METER = "graphql.phase";
+    public static final String ANONYMOUS = "anonymous";
+    private final MeterRegistry meterRegistry;
+
+    public GraphQlPhaseInstrumentation(MeterRegistry meterRegistry){
+        this.meterRegistry=meterRegistry;
+    }
+
+    @Override
+    public InstrumentationContext<Document> beginParse(InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        return timed("parse", parameters.getExecutionInput().getOperationName());
+    }
+
+    @Override
+    public InstrumentationContext<List<ValidationError>> beginValidation(InstrumentationValidationParameters parameters, InstrumentationState state) {
+        return timed("validate", parameters.getExecutionInput().getOperationName());
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        return timed("execute", parameters.getExecutionContext().getOperationDefinition().getName());
+    }
+
+    private <T> InstrumentationContext<T> timed(String phase, String operationName){
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) -> sample.stop(Timer.builder(METER)
+                .tag("phase", phase)
+                .tag("operation", operationName==null ? ANONYMOUS : operationName)
+                .register(meterRegistry)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.cg.bms.metrics;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Times calls to beans annotated with Micrometer's {@link Timed}, tagged with the class, method and
+ * outcome. A method that returns a {@link Mono} or {@link Flux} is timed from subscription to its
+ * terminal signal, which is when the work actually happens, rather than while the publisher is
+ * assembled. Other methods are timed around the call.
+ */
+public class ReactiveTimedInterceptor implements MethodInterceptor {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public ReactiveTimedInterceptor(ObjectProvider<MeterRegistry> meterRegistry){
+        this.meterRegistry=meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Class<?> targetClass = AopUtils.getTargetClass(invocation.getThis());
+        Timed timed = AnnotatedElementUtils.findMergedAnnotation(targetClass, Timed.class);
+        if(timed==null || invocation.getMethod().getDeclaringClass()==Object.class){
+            return invocation.proceed();
+        }
+        MeterRegistry registry = meterRegistry.getObject();
+        Timer.Builder timer = Timer.builder(timed.value())
+                .tags(timed.extraTags())
+                .tag("class", targetClass.getSimpleName())
+                .tag("method", invocation.getMethod().getName());
+        Timer.Sample sample = Timer.start(registry);
+        Object result;
+        try{
+            result = invocation.proceed();
+        }
+        catch(Throwable ex){
+            sample.stop(timer.tag("outcome", "error").register(registry));
+            throw ex;
+        }
+        if(result instanceof Mono<?> mono){
+            return Mono.defer(() -> {
+                Timer.Sample subscribed = Timer.start(registry);
+                return mono.doFinally(signal -> subscribed.stop(timer.tag("outcome", outcome(signal)).register(registry)));
+            });
+        }
+        if(result instanceof Flux<?> flux){
+            return Flux.defer(() -> {
+                Timer.Sample subscribed = Timer.start(registry);
+                return flux.doFinally(signal -> subscribed.stop(timer.tag("outcome", outcome(signal)).register(registry)));
+            });
+        }
+        sample.stop(timer.tag("outcome", "success").register(registry));
+        return result;
+    }
+
+    private static String outcome(SignalType signal){
+        return switch(signal){
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.cg.bms.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageInfo {
+    private boolean hasPreviousPage;
+    private boolean hasNextPage;
+    private String startCursor;
+    private String endCursor;
+}
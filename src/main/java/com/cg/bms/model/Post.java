@@ -2,11 +2,21 @@ package com.cg.bms.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Base64;
 import java.util.Objects;
 
+/**
+ * {@code content} is not a column: it is stored in {@code post_content_chunk} rows and only
+ * filled in by the reads and writes that need it. {@code contentLength} is kept on the row, as is
+ * {@code contentHash}, which lets an update tell whether the content changed without reading it.
+ */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -16,15 +26,62 @@ public class Post {
     @Id
     private Long id;
     private String title;
+    @Transient
+    @ToString.Exclude
     private String content;
+    @ToString.Exclude
+    private Integer contentLength;
+    @ToString.Exclude
+    private String contentHash;
     private String author;
     private OffsetDateTime createdAt;
     private OffsetDateTime updatedAt;
+    @Version
+    private Long version;
+    public Post(Long id, String title, String content, String author, OffsetDateTime createdAt, OffsetDateTime updatedAt)
+    {
+        this(id, title, content, content==null ? null : content.length(), null, author, createdAt, updatedAt, null);
+    }
     public Post(PostInput postInput)
     {
         this.title= Objects.requireNonNull(postInput.getTitle());
         this.content=postInput.getContent();
+        this.contentLength=content==null ? null : content.length();
+        this.contentHash=hashContent(content);
         this.author=Objects.requireNonNull(postInput.getAuthor());
         this.createdAt = OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
     }
+    /**
+     * SHA-256 of the content's UTF-16 code units, null for no content. The body is fed to the
+     * digest a block at a time rather than encoded into one large byte array.
+     */
+    public static String hashContent(String content)
+    {
+        if(content==null){
+            return null;
+        }
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] block = new byte[16384];
+            for(int start=0;start<content.length();start+=block.length/2){
+                int end = Math.min(content.length(), start+block.length/2);
+                int size = 0;
+                for(int i=start;i<end;i++){
+                    char c = content.charAt(i);
+                    block[size++]=(byte) (c>>8);
+                    block[size++]=(byte) c;
+                }
+                digest.update(block, 0, size);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        }
+        catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+    @ToString.Include(name="contentLength")
+    private Integer contentLengthForToString()
+    {
+        return content==null ? contentLength : Integer.valueOf(content.length());
+    }
 }
@@ -0,0 +1,38 @@
+package com.cg.bms.model;
+
+import com.cg.bms.event.PostEvent;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+import java.time.OffsetDateTime;
+
+/**
+ * One row of the {@code post_changes} outbox: which post changed, how, and on which node.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Table("post_changes")
+public class PostChange {
+    @Id
+    private Long id;
+    private Long postId;
+    private PostEvent.Type changeType;
+    private String title;
+    private String author;
+    private OffsetDateTime createdAt;
+    private String nodeId;
+    private OffsetDateTime changedAt;
+
+    public static PostChange of(PostEvent.Type changeType, Post post, String nodeId, OffsetDateTime changedAt){
+        return new PostChange(null, post.getId(), changeType, post.getTitle(), post.getAuthor(), post.getCreatedAt(), nodeId, changedAt);
+    }
+
+    /**
+     * The post as far as the change describes it; content is not part of the change.
+     */
+    public Post toPost(){
+        return Post.builder().id(postId).title(title).author(author).createdAt(createdAt).build();
+    }
+}
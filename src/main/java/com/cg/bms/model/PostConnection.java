@@ -0,0 +1,14 @@
+package com.cg.bms.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostConnection {
+    private List<PostEdge> edges;
+    private PageInfo pageInfo;
+}
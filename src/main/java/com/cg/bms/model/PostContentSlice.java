@@ -0,0 +1,8 @@
+package com.cg.bms.model;
+
+/**
+ * A range of a post's content, {@code length} characters from {@code offset} (0-based). Used as
+ * the key of the per-request DataLoader that reads the slices of many posts in one query.
+ */
+public record PostContentSlice(Long postId, int offset, int length) {
+}
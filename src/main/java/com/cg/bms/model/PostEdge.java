@@ -0,0 +1,13 @@
+package com.cg.bms.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostEdge {
+    private String cursor;
+    private Post node;
+}
@@ -0,0 +1,31 @@
+package com.cg.bms.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Conditions set on one filter are combined with AND; {@code and} and {@code or} nest further filters.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class PostFilter {
+    @Size(min=1,max=100)
+    private List<String> authorIn;
+    private OffsetDateTime createdFrom;
+    private OffsetDateTime createdBefore;
+    @Size(min=1,max=20)
+    private String titlePrefix;
+    private Boolean updatedAtIsNull;
+    @Valid
+    private List<PostFilter> and;
+    @Valid
+    private List<PostFilter> or;
+}
@@ -5,19 +5,26 @@ import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class PostInput {
+    public static final int MAX_CONTENT_LENGTH = 1000000000;
 
     @NotBlank(message = "{postInput.title.not.blank}")
     @Size(min=1,max=20)
     private String title;
-    @Size(max=1000000000)
+    @Size(max=MAX_CONTENT_LENGTH)
+    @ToString.Exclude
     private String content;
     @NotBlank(message = "{postInput.author.not.blank}")
     @Size(min=1,max=10)
     private String author;
 
+    @ToString.Include(name="contentLength")
+    private Integer contentLengthForToString(){
+        return content==null ? null : content.length();
+    }
 }
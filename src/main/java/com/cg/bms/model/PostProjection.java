@@ -0,0 +1,27 @@
+package com.cg.bms.model;
+
+import java.util.Set;
+
+/**
+ * Which {@link Post} properties a read has to load. {@code SUMMARY} leaves out the
+ * potentially huge content, whose chunks are then not read, so listings that do not select it
+ * stay small.
+ */
+public enum PostProjection {
+    FULL(Set.of()),
+    SUMMARY(Set.of("content"));
+
+    private final Set<String> excludedProperties;
+
+    PostProjection(Set<String> excludedProperties){
+        this.excludedProperties=excludedProperties;
+    }
+
+    public boolean includes(String property){
+        return !excludedProperties.contains(property);
+    }
+
+    public static PostProjection of(boolean contentSelected){
+        return contentSelected ? FULL : SUMMARY;
+    }
+}
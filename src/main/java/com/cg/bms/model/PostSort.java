@@ -0,0 +1,20 @@
+package com.cg.bms.model;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Sort;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostSort {
+    @NotNull
+    private PostSortField field;
+    private Sort.Direction direction = Sort.Direction.ASC;
+
+    public Sort.Order toOrder(){
+        return new Sort.Order(direction==null ? Sort.Direction.ASC : direction, field.getProperty());
+    }
+}
@@ -0,0 +1,19 @@
+package com.cg.bms.model;
+
+public enum PostSortField {
+    ID("id"),
+    TITLE("title"),
+    AUTHOR("author"),
+    CREATED_AT("createdAt"),
+    UPDATED_AT("updatedAt");
+
+    private final String property;
+
+    PostSortField(String property){
+        this.property=property;
+    }
+
+    public String getProperty(){
+        return property;
+    }
+}
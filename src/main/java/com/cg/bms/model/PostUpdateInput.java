@@ -0,0 +1,20 @@
+package com.cg.bms.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostUpdateInput {
+
+    @NotNull(message = "{id.not.null}")
+    private Long id;
+    @NotNull
+    @Valid
+    private PostInput postInput;
+
+}
@@ -0,0 +1,48 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.Post;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes that span a post's row and its content chunks. Multi-row writes are sent as one batched
+ * R2DBC statement ({@code Statement.add()}) instead of one statement per post. Content is written
+ * in batches of chunks, so every method here is bounded per statement rather than as a whole.
+ */
+public interface PostBatchRepository {
+    /**
+     * Inserts the posts with their content and emits their generated ids in input order.
+     */
+    @TimeoutPerStatement
+    Flux<Long> insertAll(List<Post> posts);
+    /**
+     * Updates title, content, author and updatedAt of the posts and emits the number of rows
+     * updated for each post, in input order. Content chunks are only rewritten for posts whose
+     * content hash changed.
+     */
+    @TimeoutPerStatement
+    Flux<Long> updateAll(List<Post> posts);
+    /**
+     * Overwrites the editable columns of a live post, bumps its version and emits the updated post
+     * carrying the given content. A non-null {@code version} must match the stored one; otherwise
+     * nothing is emitted. The content chunks are only rewritten when the stored content hash
+     * differs, and the stored body is never read back.
+     */
+    @TimeoutPerStatement
+    Mono<Post> updateAndReturnById(Long id, String title, String content, String author, OffsetDateTime updatedAt, Long version);
+    /**
+     * Writes the content of posts that were saved without it.
+     */
+    @TimeoutPerStatement
+    Mono<Void> insertContent(Collection<Post> posts);
+    /**
+     * Appends {@code chunk} to the content of a live post unless that would take it past
+     * {@code maxLength} characters, and emits the number of posts updated. Only the last stored
+     * chunk is rewritten, so the cost does not grow with the size of the body.
+     */
+    @TimeoutPerStatement
+    Mono<Integer> appendContent(Long id, String chunk, OffsetDateTime updatedAt, int maxLength);
+}
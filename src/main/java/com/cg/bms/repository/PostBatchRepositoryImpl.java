@@ -0,0 +1,241 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.Post;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+public class PostBatchRepositoryImpl implements PostBatchRepository {
+    private static final String INSERT = "INSERT INTO Post(title, content_length, content_hash, author, created_At) VALUES ($1, $2, $3, $4, $5)";
+    // The old row's hash tells whether the content chunks need rewriting.
+    private static final String UPDATE = "SELECT content_hash FROM OLD TABLE (UPDATE Post SET title = $1, content_length = $2, content_hash = $3,"
+            + " author = $4, updated_At = $5, version = version + 1 WHERE id = $6 AND deleted_At IS NULL)";
+    private static final String UPDATE_ONE = "SELECT created_At, version, content_hash FROM OLD TABLE (UPDATE Post SET title = :title,"
+            + " content_length = :contentLength, content_hash = :contentHash, author = :author, updated_At = :updatedAt, version = version + 1"
+            + " WHERE id = :id AND deleted_At IS NULL AND (CAST(:version AS BIGINT) IS NULL OR version = :version))";
+    private static final String INSERT_CHUNK = "INSERT INTO post_content_chunk(post_id, seq, text) VALUES ($1, $2, $3)";
+    private static final String DELETE_CHUNKS = "DELETE FROM post_content_chunk WHERE post_id IN (:ids)";
+    private static final String APPEND = "SELECT content_length FROM FINAL TABLE (UPDATE Post"
+            + " SET content_length = COALESCE(content_length, 0) + :added, content_hash = NULL, updated_At = :updatedAt"
+            + " WHERE id = :id AND deleted_At IS NULL AND COALESCE(content_length, 0) + :added <= :maxLength)";
+    private static final String APPEND_TO_CHUNK = "UPDATE post_content_chunk SET text = CONCAT(text, :text) WHERE post_id = :id AND seq = :seq";
+    // Bounds the chunk text bound to one statement to about a megabyte.
+    private static final int CHUNKS_PER_STATEMENT = 128;
+    private final DatabaseClient databaseClient;
+    private final Duration statementTimeout;
+
+    public PostBatchRepositoryImpl(DatabaseClient databaseClient, @Value("${bms.r2dbc.statement-timeout:PT5S}") Duration statementTimeout){
+        this.databaseClient=databaseClient;
+        this.statementTimeout=statementTimeout;
+    }
+
+    @Override
+    public Flux<Long> insertAll(List<Post> posts) {
+        if(posts.isEmpty()){
+            return Flux.empty();
+        }
+        return this.databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT);
+            for(int i=0;i<posts.size();i++){
+                if(i>0){
+                    statement.add();
+                }
+                Post post = posts.get(i);
+                statement.bind(0, post.getTitle());
+                bindNullable(statement, 1, contentLength(post), Integer.class);
+                bindNullable(statement, 2, Post.hashContent(post.getContent()), String.class);
+                statement.bind(3, post.getAuthor());
+                statement.bind(4, post.getCreatedAt());
+            }
+            return Flux.from(statement.returnGeneratedValues("id").execute())
+                    .concatMap(result -> result.map((row, metadata) -> row.get("id", Long.class)));
+        })
+        .collectList()
+        .timeout(statementTimeout)
+        .flatMapMany(ids -> {
+            List<Post> inserted = new ArrayList<>(posts.size());
+            for(int i=0;i<posts.size();i++){
+                Post post = posts.get(i);
+                inserted.add(Post.builder().id(ids.get(i)).content(post.getContent()).build());
+            }
+            return insertContent(inserted).thenMany(Flux.fromIterable(ids));
+        });
+    }
+
+    @Override
+    public Flux<Long> updateAll(List<Post> posts) {
+        if(posts.isEmpty()){
+            return Flux.empty();
+        }
+        List<String> hashes = posts.stream().map(post -> Post.hashContent(post.getContent())).toList();
+        return this.databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(UPDATE);
+            for(int i=0;i<posts.size();i++){
+                if(i>0){
+                    statement.add();
+                }
+                Post post = posts.get(i);
+                statement.bind(0, post.getTitle());
+                bindNullable(statement, 1, contentLength(post), Integer.class);
+                bindNullable(statement, 2, hashes.get(i), String.class);
+                statement.bind(3, post.getAuthor());
+                bindNullable(statement, 4, post.getUpdatedAt(), OffsetDateTime.class);
+                statement.bind(5, post.getId());
+            }
+            // One result per post, holding its old hash, or no row if the post was not updated.
+            return Flux.from(statement.execute())
+                    .concatMap(result -> Flux.from(result.map((row, metadata) -> Optional.ofNullable(row.get("content_hash", String.class))))
+                            .collectList());
+        })
+        .collectList()
+        .timeout(statementTimeout)
+        .flatMapMany(oldHashes -> {
+            // Content is only rewritten for updated posts whose content changed; the others may not exist.
+            List<Post> changed = new ArrayList<>(posts.size());
+            List<Long> counts = new ArrayList<>(posts.size());
+            for(int i=0;i<posts.size();i++){
+                List<Optional<String>> old = oldHashes.get(i);
+                counts.add((long) old.size());
+                if(!old.isEmpty() && !Objects.equals(old.get(0).orElse(null), hashes.get(i))){
+                    changed.add(posts.get(i));
+                }
+            }
+            return replaceContent(changed).thenMany(Flux.fromIterable(counts));
+        });
+    }
+
+    @Override
+    public Mono<Post> updateAndReturnById(Long id, String title, String content, String author, OffsetDateTime updatedAt, Long version) {
+        String contentHash = Post.hashContent(content);
+        Integer contentLength = content==null ? null : content.length();
+        DatabaseClient.GenericExecuteSpec update = this.databaseClient.sql(UPDATE_ONE)
+                .bind("title", title)
+                .bind("author", author)
+                .bind("updatedAt", updatedAt)
+                .bind("id", id);
+        update = bindNullable(update, "contentLength", contentLength, Integer.class);
+        update = bindNullable(update, "contentHash", contentHash, String.class);
+        update = bindNullable(update, "version", version, Long.class);
+        return update
+                .map(row -> {
+                    Post post = Post.builder()
+                            .id(id)
+                            .title(title)
+                            .content(content)
+                            .contentLength(contentLength)
+                            .contentHash(contentHash)
+                            .author(author)
+                            .createdAt(row.get("created_At", OffsetDateTime.class))
+                            .updatedAt(updatedAt)
+                            .version(row.get("version", Long.class)+1)
+                            .build();
+                    return Map.entry(post, Optional.ofNullable(row.get("content_hash", String.class)));
+                })
+                .one()
+                .timeout(statementTimeout)
+                .flatMap(updated -> Objects.equals(updated.getValue().orElse(null), contentHash)
+                        ? Mono.just(updated.getKey())
+                        : replaceContent(List.of(updated.getKey())).thenReturn(updated.getKey()));
+    }
+
+    @Override
+    public Mono<Void> insertContent(Collection<Post> posts) {
+        return insertChunks(Flux.fromIterable(posts)
+                .filter(post -> post.getContent()!=null)
+                .concatMap(post -> PostContentChunks.split(post.getId(), post.getContent(), 0)));
+    }
+
+    /**
+     * Replaces the stored content of the posts with their current content.
+     */
+    private Mono<Void> replaceContent(Collection<Post> posts) {
+        if(posts.isEmpty()){
+            return Mono.empty();
+        }
+        return this.databaseClient.sql(DELETE_CHUNKS)
+                .bind("ids", posts.stream().map(Post::getId).toList())
+                .fetch()
+                .rowsUpdated()
+                .timeout(statementTimeout)
+                .then(insertContent(posts));
+    }
+
+    @Override
+    public Mono<Integer> appendContent(Long id, String chunk, OffsetDateTime updatedAt, int maxLength) {
+        return this.databaseClient.sql(APPEND)
+                .bind("added", chunk.length())
+                .bind("updatedAt", updatedAt)
+                .bind("id", id)
+                .bind("maxLength", maxLength)
+                .map(row -> row.get(0, Integer.class))
+                .one()
+                .timeout(statementTimeout)
+                .flatMap(length -> appendChunks(id, length-chunk.length(), chunk).thenReturn(1))
+                .defaultIfEmpty(0);
+    }
+
+    /**
+     * Tops up the post's last chunk and inserts the rest of {@code text} as new chunks. The
+     * UPDATE that reserved the length holds the post's row lock, so appends cannot interleave.
+     */
+    private Mono<Void> appendChunks(Long id, int storedLength, String text){
+        int free = storedLength%PostContentChunks.LENGTH==0 ? 0 : PostContentChunks.LENGTH-storedLength%PostContentChunks.LENGTH;
+        int topUp = Math.min(free, text.length());
+        Mono<Void> lastChunk = topUp==0 ? Mono.empty() : this.databaseClient.sql(APPEND_TO_CHUNK)
+                .bind("text", text.substring(0, topUp))
+                .bind("id", id)
+                .bind("seq", PostContentChunks.seqOf(storedLength))
+                .fetch()
+                .rowsUpdated()
+                .timeout(statementTimeout)
+                .then();
+        return lastChunk.then(insertChunks(
+                PostContentChunks.split(id, text.substring(topUp), PostContentChunks.seqOf((long) storedLength+topUp))));
+    }
+
+    private Mono<Void> insertChunks(Flux<PostContentChunks.Chunk> chunks){
+        return chunks.buffer(CHUNKS_PER_STATEMENT)
+                .concatMap(batch -> this.databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(INSERT_CHUNK);
+                    for(int i=0;i<batch.size();i++){
+                        if(i>0){
+                            statement.add();
+                        }
+                        PostContentChunks.Chunk chunk = batch.get(i);
+                        statement.bind(0, chunk.postId());
+                        statement.bind(1, chunk.seq());
+                        statement.bind(2, chunk.text());
+                    }
+                    return Flux.from(statement.execute())
+                            .concatMap(result -> result.getRowsUpdated());
+                }).then().timeout(statementTimeout))
+                .then();
+    }
+
+    private static Integer contentLength(Post post){
+        return post.getContent()==null ? null : post.getContent().length();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name, Object value, Class<?> type){
+        return value==null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static void bindNullable(Statement statement, int index, Object value, Class<?> type){
+        if(value==null){
+            statement.bindNull(index, type);
+        }
+        else{
+            statement.bind(index, value);
+        }
+    }
+}
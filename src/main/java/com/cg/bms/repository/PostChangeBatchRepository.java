@@ -0,0 +1,16 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.PostChange;
+import reactor.core.publisher.Flux;
+import java.util.List;
+
+/**
+ * Writes outbox rows as one batched R2DBC statement, the same way {@link PostBatchRepository}
+ * writes posts.
+ */
+public interface PostChangeBatchRepository {
+    /**
+     * Inserts the changes and emits their generated ids in input order.
+     */
+    Flux<Long> insertAll(List<PostChange> changes);
+}
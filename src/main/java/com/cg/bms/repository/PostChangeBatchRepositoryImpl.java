@@ -0,0 +1,52 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.PostChange;
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public class PostChangeBatchRepositoryImpl implements PostChangeBatchRepository {
+    private static final String INSERT = "INSERT INTO post_changes(post_id, change_type, title, author, created_At, node_id, changed_At)"
+            + " VALUES ($1, $2, $3, $4, $5, $6, $7)";
+    private final DatabaseClient databaseClient;
+
+    public PostChangeBatchRepositoryImpl(DatabaseClient databaseClient){
+        this.databaseClient=databaseClient;
+    }
+
+    @Override
+    public Flux<Long> insertAll(List<PostChange> changes) {
+        if(changes.isEmpty()){
+            return Flux.empty();
+        }
+        return this.databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT);
+            for(int i=0;i<changes.size();i++){
+                if(i>0){
+                    statement.add();
+                }
+                PostChange change = changes.get(i);
+                statement.bind(0, change.getPostId());
+                statement.bind(1, change.getChangeType().name());
+                bindNullable(statement, 2, change.getTitle(), String.class);
+                bindNullable(statement, 3, change.getAuthor(), String.class);
+                bindNullable(statement, 4, change.getCreatedAt(), OffsetDateTime.class);
+                statement.bind(5, change.getNodeId());
+                statement.bind(6, change.getChangedAt());
+            }
+            return Flux.from(statement.returnGeneratedValues("id").execute())
+                    .concatMap(result -> result.map((row, metadata) -> row.get("id", Long.class)));
+        });
+    }
+
+    private static void bindNullable(Statement statement, int index, Object value, Class<?> type){
+        if(value==null){
+            statement.bindNull(index, type);
+        }
+        else{
+            statement.bind(index, value);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.PostChange;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.OffsetDateTime;
+
+@Repository
+public interface PostChangeRepository extends ReactiveCrudRepository<PostChange, Long>, PostChangeBatchRepository {
+    /**
+     * The next changes after {@code id}, oldest first; a range scan over the primary key.
+     */
+    @Query("SELECT * FROM post_changes WHERE id > :id ORDER BY id LIMIT :limit")
+    Flux<PostChange> findAfter(long id, int limit);
+    @Query("SELECT COALESCE(MAX(id), 0) FROM post_changes")
+    Mono<Long> findLatestId();
+    /**
+     * Purges changes older than {@code changedBefore}, but never the newest, which keeps
+     * {@link #findLatestId()} from going back.
+     */
+    @Modifying
+    @Query("DELETE FROM post_changes WHERE id IN (SELECT id FROM post_changes WHERE changed_At < :changedBefore"
+            + " AND id < (SELECT MAX(id) FROM post_changes) ORDER BY id LIMIT :batchSize)")
+    Mono<Integer> purgeChanged(OffsetDateTime changedBefore, int batchSize);
+}
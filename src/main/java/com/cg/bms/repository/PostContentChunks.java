@@ -0,0 +1,33 @@
+package com.cg.bms.repository;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * How post content is laid out in {@code post_content_chunk}: chunk {@code seq} holds the characters
+ * from {@code seq * LENGTH}, and every chunk but a post's last one is exactly {@code LENGTH} long.
+ */
+final class PostContentChunks {
+    static final int LENGTH = 8192;
+
+    private PostContentChunks(){
+    }
+
+    /**
+     * Splits {@code text} into chunks numbered from {@code firstSeq}. Chunks are cut as they are
+     * requested, so a large body is not copied all at once.
+     */
+    static Flux<Chunk> split(Long postId, String text, int firstSeq){
+        int count = (text.length()+LENGTH-1)/LENGTH;
+        return Flux.range(0, count)
+                .map(i -> new Chunk(postId, firstSeq+i, text.substring(i*LENGTH, Math.min(text.length(), (i+1)*LENGTH))));
+    }
+
+    /**
+     * The chunk holding the character at {@code offset}, capped for offsets past any stored body.
+     */
+    static int seqOf(long offset){
+        return (int) Math.min(offset/LENGTH, Integer.MAX_VALUE);
+    }
+
+    record Chunk(Long postId, int seq, String text){}
+}
@@ -0,0 +1,57 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostContentSlice;
+import com.cg.bms.model.PostFilter;
+import com.cg.bms.model.PostProjection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads that only select the columns of the requested {@link PostProjection}. Content chunks
+ * are only read for projections that include content, for a whole batch of posts per query.
+ */
+public interface PostQueryRepository {
+    Mono<Post> findById(Long id, PostProjection projection);
+    Flux<Post> findAllById(Collection<Long> ids, PostProjection projection);
+    Flux<Post> findAll(PostProjection projection);
+    /**
+     * All live posts in id order, carrying at most the first {@code prefixLength} characters of
+     * their content; chunks past the prefix are not read.
+     */
+    Flux<Post> findAllWithContentPrefix(int prefixLength);
+    /**
+     * The live posts among {@code ids}, carrying at most the first {@code prefixLength} characters
+     * of their content.
+     */
+    Flux<Post> findAllByIdWithContentPrefix(Collection<Long> ids, int prefixLength);
+    Flux<Post> findAllBy(Pageable pageable, PostProjection projection);
+    /**
+     * Reads one page of posts together with the total row count in a single round trip,
+     * using a {@code COUNT(*) OVER()} window function instead of a separate count query.
+     */
+    Mono<Page<Post>> findPageWithTotalCount(Pageable pageable, PostProjection projection);
+    /**
+     * Keyset page of posts with {@code afterId < id < beforeId}, ordered by id in the given direction.
+     */
+    Flux<Post> findKeysetPage(Long afterId, Long beforeId, Sort.Direction direction, int limit, PostProjection projection);
+    /**
+     * Posts matching the filter tree, translated into a single parameterized query so that
+     * filtering, sorting and the limit are all applied by the database.
+     */
+    Flux<Post> search(PostFilter filter, Sort sort, int limit, PostProjection projection);
+    /**
+     * Reads the slices of several posts in one query, touching only the chunks each slice
+     * overlaps. Slices of posts that do not exist are left out of the result.
+     */
+    Mono<Map<PostContentSlice, String>> findContentSlices(Collection<PostContentSlice> slices);
+    /**
+     * Content lengths of the live posts among {@code ids}, 0 for posts without content.
+     */
+    Mono<Map<Long, Integer>> findContentLengths(Collection<Long> ids);
+}
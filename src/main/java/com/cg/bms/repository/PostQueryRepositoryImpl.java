@@ -0,0 +1,329 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostContentSlice;
+import com.cg.bms.model.PostFilter;
+import com.cg.bms.model.PostProjection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+public class PostQueryRepositoryImpl implements PostQueryRepository {
+    private static final String TOTAL_COUNT = "total_count";
+    private static final String DELETED_AT = "deleted_At";
+    private static final String CONTENT = "content";
+    // Posts whose content is read with one chunk query.
+    private static final int CONTENT_BATCH_SIZE = 64;
+    private final R2dbcEntityTemplate template;
+    private final R2dbcConverter converter;
+
+    public PostQueryRepositoryImpl(R2dbcEntityTemplate template){
+        this.template=template;
+        this.converter=template.getConverter();
+    }
+
+    @Override
+    public Mono<Post> findById(Long id, PostProjection projection) {
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(live().and("id").is(id)).columns(columns(projection)))
+                .all(), projection)
+                .next();
+    }
+
+    @Override
+    public Flux<Post> findAllById(Collection<Long> ids, PostProjection projection) {
+        if(ids.isEmpty()){
+            return Flux.empty();
+        }
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(live().and("id").in(ids)).columns(columns(projection)))
+                .all(), projection);
+    }
+
+    @Override
+    public Flux<Post> findAll(PostProjection projection) {
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(live()).sort(Sort.by("id")).columns(columns(projection)))
+                .all(), projection);
+    }
+
+    @Override
+    public Flux<Post> findAllWithContentPrefix(int prefixLength) {
+        return this.template.select(Post.class)
+                .matching(Query.query(live()).sort(Sort.by("id")).columns(columns(PostProjection.SUMMARY)))
+                .all()
+                .buffer(CONTENT_BATCH_SIZE)
+                .concatMap(posts -> fillContent(posts, prefixLength));
+    }
+
+    @Override
+    public Flux<Post> findAllByIdWithContentPrefix(Collection<Long> ids, int prefixLength) {
+        if(ids.isEmpty()){
+            return Flux.empty();
+        }
+        return this.template.select(Post.class)
+                .matching(Query.query(live().and("id").in(ids)).columns(columns(PostProjection.SUMMARY)))
+                .all()
+                .buffer(CONTENT_BATCH_SIZE)
+                .concatMap(posts -> fillContent(posts, prefixLength));
+    }
+
+    @Override
+    public Flux<Post> findAllBy(Pageable pageable, PostProjection projection) {
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(live()).with(pageable).columns(columns(projection)))
+                .all(), projection);
+    }
+
+    @Override
+    public Mono<Page<Post>> findPageWithTotalCount(Pageable pageable, PostProjection projection) {
+        String sql = "SELECT " + selectList(projection) + ", COUNT(*) OVER() AS " + TOTAL_COUNT + " FROM Post p"
+                + " WHERE p." + DELETED_AT + " IS NULL"
+                + " ORDER BY " + orderBy(pageable.getSort())
+                + " LIMIT :limit OFFSET :offset";
+        return this.template.getDatabaseClient().sql(sql)
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map((row, metadata) -> Tuples.of(converter.read(Post.class, row, metadata), row.get(TOTAL_COUNT, Long.class)))
+                .all()
+                .collectList()
+                .flatMap(rows -> toPage(rows, pageable))
+                .flatMap(page -> withContent(Flux.fromIterable(page.getContent()), projection).then(Mono.just(page)));
+    }
+
+    @Override
+    public Flux<Post> findKeysetPage(Long afterId, Long beforeId, Sort.Direction direction, int limit, PostProjection projection) {
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(live().and("id").greaterThan(afterId).and("id").lessThan(beforeId))
+                        .sort(Sort.by(direction, "id"))
+                        .limit(limit)
+                        .columns(columns(projection)))
+                .all(), projection);
+    }
+
+    @Override
+    public Flux<Post> search(PostFilter filter, Sort sort, int limit, PostProjection projection) {
+        Criteria criteria = live();
+        if(filter!=null){
+            Criteria matching = toCriteria(filter);
+            if(!matching.isEmpty()){
+                criteria = criteria.and(matching);
+            }
+        }
+        return withContent(this.template.select(Post.class)
+                .matching(Query.query(criteria).sort(sort).limit(limit).columns(columns(projection)))
+                .all(), projection);
+    }
+
+    @Override
+    public Mono<Map<PostContentSlice, String>> findContentSlices(Collection<PostContentSlice> slices) {
+        if(slices.isEmpty()){
+            return Mono.just(Map.of());
+        }
+        List<PostContentSlice> keys = List.copyOf(slices);
+        List<String> selects = new ArrayList<>(keys.size());
+        for(int i=0;i<keys.size();i++){
+            // The outer join keeps a row for a live post whose slice covers no chunk.
+            selects.add("SELECT " + i + " AS k, c.seq, c.text FROM Post p"
+                    + " LEFT JOIN post_content_chunk c ON c.post_id = p.id AND c.seq BETWEEN :from" + i + " AND :to" + i
+                    + " WHERE p.id = :id" + i + " AND p." + DELETED_AT + " IS NULL");
+        }
+        DatabaseClient.GenericExecuteSpec spec = this.template.getDatabaseClient()
+                .sql(String.join(" UNION ALL ", selects) + " ORDER BY k, seq");
+        for(int i=0;i<keys.size();i++){
+            PostContentSlice slice = keys.get(i);
+            spec = spec.bind("id" + i, slice.postId())
+                    .bind("from" + i, PostContentChunks.seqOf(slice.offset()))
+                    .bind("to" + i, PostContentChunks.seqOf((long) slice.offset()+slice.length()-1));
+        }
+        return spec.map((row, metadata) -> new SliceRow(row.get("k", Integer.class), row.get("text", String.class)))
+                .all()
+                .collect(TreeMap<Integer, StringBuilder>::new, (texts, row) -> {
+                    StringBuilder text = texts.computeIfAbsent(row.key(), key -> new StringBuilder());
+                    if(row.text()!=null){
+                        text.append(row.text());
+                    }
+                })
+                .map(texts -> {
+                    Map<PostContentSlice, String> result = new HashMap<>();
+                    texts.forEach((key, text) -> {
+                        PostContentSlice slice = keys.get(key);
+                        long first = (long) PostContentChunks.seqOf(slice.offset())*PostContentChunks.LENGTH;
+                        int start = (int) Math.min(slice.offset()-first, text.length());
+                        result.put(slice, text.substring(start, Math.min(text.length(), start+slice.length())));
+                    });
+                    return result;
+                });
+    }
+
+    @Override
+    public Mono<Map<Long, Integer>> findContentLengths(Collection<Long> ids) {
+        if(ids.isEmpty()){
+            return Mono.just(Map.of());
+        }
+        return this.template.getDatabaseClient()
+                .sql("SELECT id, COALESCE(content_length, 0) AS content_length FROM Post WHERE id IN (:ids) AND " + DELETED_AT + " IS NULL")
+                .bind("ids", ids)
+                .map(row -> Tuples.of(row.get("id", Long.class), row.get("content_length", Integer.class)))
+                .all()
+                .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
+    /**
+     * Fills in the content of projections that include it, reading the chunks of a batch of
+     * posts with one query. Posts are emitted in their original order.
+     */
+    private Flux<Post> withContent(Flux<Post> posts, PostProjection projection){
+        if(!projection.includes(CONTENT)){
+            return posts;
+        }
+        return posts.buffer(CONTENT_BATCH_SIZE).concatMap(batch -> fillContent(batch, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Fills in up to {@code prefixLength} characters of the posts' content, reading only the
+     * chunks that prefix overlaps.
+     */
+    private Flux<Post> fillContent(List<Post> posts, int prefixLength){
+        List<Long> ids = posts.stream()
+                .filter(post -> post.getContentLength()!=null && post.getContentLength()>0)
+                .map(Post::getId)
+                .toList();
+        Mono<Map<Long, StringBuilder>> contents = ids.isEmpty() ? Mono.just(Map.of()) : this.template.getDatabaseClient()
+                .sql("SELECT post_id, text FROM post_content_chunk WHERE post_id IN (:ids) AND seq <= :lastSeq ORDER BY post_id, seq")
+                .bind("ids", ids)
+                .bind("lastSeq", PostContentChunks.seqOf(prefixLength-1L))
+                .map(row -> Tuples.of(row.get("post_id", Long.class), row.get("text", String.class)))
+                .all()
+                .collect(HashMap::new, (texts, chunk) -> texts.computeIfAbsent(chunk.getT1(), id -> new StringBuilder()).append(chunk.getT2()));
+        return contents.flatMapIterable(texts -> {
+            for(Post post : posts){
+                StringBuilder text = texts.get(post.getId());
+                post.setContent(post.getContentLength()==null ? null
+                        : text==null ? "" : text.substring(0, Math.min(text.length(), prefixLength)));
+            }
+            return posts;
+        });
+    }
+
+    private Mono<Page<Post>> toPage(List<Tuple2<Post, Long>> rows, Pageable pageable){
+        List<Post> posts = rows.stream().map(Tuple2::getT1).collect(Collectors.toList());
+        if(!rows.isEmpty()){
+            return Mono.just(new PageImpl<>(posts, pageable, rows.get(0).getT2()));
+        }
+        if(pageable.getOffset()==0){
+            return Mono.just(new PageImpl<>(posts, pageable, 0));
+        }
+        // The window function yields no row past the last page, so only then fall back to a plain count.
+        return this.template.getDatabaseClient().sql("SELECT COUNT(*) FROM Post WHERE " + DELETED_AT + " IS NULL")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .map(total -> new PageImpl<>(posts, pageable, total));
+    }
+
+    private static Criteria live(){
+        return Criteria.where(DELETED_AT).isNull();
+    }
+
+    /**
+     * Translates one filter node; an empty result means the node matches every post.
+     */
+    private static Criteria toCriteria(PostFilter filter){
+        List<Criteria> conditions = new ArrayList<>();
+        if(filter.getAuthorIn()!=null){
+            conditions.add(Criteria.where("author").in(filter.getAuthorIn()));
+        }
+        if(filter.getCreatedFrom()!=null){
+            conditions.add(Criteria.where("createdAt").greaterThanOrEquals(filter.getCreatedFrom()));
+        }
+        if(filter.getCreatedBefore()!=null){
+            conditions.add(Criteria.where("createdAt").lessThan(filter.getCreatedBefore()));
+        }
+        if(filter.getTitlePrefix()!=null){
+            conditions.add(Criteria.where("title").like(escapeLike(filter.getTitlePrefix()) + "%"));
+        }
+        if(filter.getUpdatedAtIsNull()!=null){
+            conditions.add(filter.getUpdatedAtIsNull() ? Criteria.where("updatedAt").isNull() : Criteria.where("updatedAt").isNotNull());
+        }
+        if(filter.getAnd()!=null){
+            filter.getAnd().stream()
+                    .map(PostQueryRepositoryImpl::toCriteria)
+                    .filter(condition -> !condition.isEmpty())
+                    .forEach(conditions::add);
+        }
+        if(filter.getOr()!=null && !filter.getOr().isEmpty()){
+            List<Criteria> alternatives = filter.getOr().stream().map(PostQueryRepositoryImpl::toCriteria).toList();
+            // An alternative without conditions matches everything, which makes the whole OR a no-op.
+            if(alternatives.stream().noneMatch(Criteria::isEmpty)){
+                Criteria any = Criteria.empty();
+                for(Criteria alternative : alternatives){
+                    any = any.or(alternative);
+                }
+                conditions.add(any);
+            }
+        }
+        // Every condition is added as its own group, so nested ORs keep their precedence.
+        Criteria all = Criteria.empty();
+        for(Criteria condition : conditions){
+            all = all.and(condition);
+        }
+        return all;
+    }
+
+    private static String escapeLike(String value){
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private SqlIdentifier[] columns(PostProjection projection){
+        List<SqlIdentifier> columns = new ArrayList<>();
+        for(RelationalPersistentProperty property : entity()){
+            if(projection.includes(property.getName())){
+                columns.add(property.getColumnName());
+            }
+        }
+        return columns.toArray(SqlIdentifier[]::new);
+    }
+
+    private String selectList(PostProjection projection){
+        return Arrays.stream(columns(projection))
+                .map(column -> "p." + column.getReference())
+                .collect(Collectors.joining(", "));
+    }
+
+    private String orderBy(Sort sort){
+        if(sort.isUnsorted()){
+            return "p." + entity().getRequiredIdProperty().getColumnName().getReference();
+        }
+        return sort.stream()
+                .map(order -> "p." + entity().getRequiredPersistentProperty(order.getProperty()).getColumnName().getReference()
+                        + (order.isAscending() ? " ASC" : " DESC"))
+                .collect(Collectors.joining(", "));
+    }
+
+    private RelationalPersistentEntity<?> entity(){
+        return converter.getMappingContext().getRequiredPersistentEntity(Post.class);
+    }
+
+    private record SliceRow(Integer key, String text){}
+}
@@ -1,12 +1,61 @@
 package com.cg.bms.repository;
 
 import com.cg.bms.model.Post;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 
+/**
+ * Posts with a non-null {@code deleted_At} are tombstones left by soft deletes; every read
+ * below skips them, including the redeclared CRUD lookups. The CRUD lookups and the rows returned
+ * by writes come without content; {@link PostQueryRepository} reads it where it is needed.
+ * Content chunks go with their post when the row is deleted.
+ */
 @Repository
-public interface PostRepository extends ReactiveCrudRepository<Post, Long> {
-    Flux<Post> findAllBy(Pageable pageable);
+public interface PostRepository extends ReactiveCrudRepository<Post, Long>, PostQueryRepository, PostBatchRepository {
+    @Override
+    @Query("SELECT * FROM Post WHERE id = :id AND deleted_At IS NULL")
+    Mono<Post> findById(Long id);
+    @Override
+    @Query("SELECT * FROM Post WHERE id IN (:ids) AND deleted_At IS NULL")
+    Flux<Post> findAllById(Iterable<Long> ids);
+    @Override
+    @Query("SELECT COUNT(*) > 0 FROM Post WHERE id = :id AND deleted_At IS NULL")
+    Mono<Boolean> existsById(Long id);
+    @Override
+    @Query("SELECT COUNT(*) FROM Post WHERE deleted_At IS NULL")
+    Mono<Long> count();
+    /**
+     * An author's posts, newest first, read in {@code idx_post_author_created_id} order. Ordering by the
+     * (constant) author as well lets H2 recognise the index order and skip the sort.
+     */
+    @Query("SELECT * FROM Post WHERE author = :author AND deleted_At IS NULL ORDER BY author, created_At DESC, id DESC LIMIT :limit")
+    Flux<Post> findByAuthor(String author, int limit);
+    /**
+     * Posts created in {@code [from, to)}, oldest first; a range scan over {@code idx_post_created_id}.
+     */
+    @Query("SELECT * FROM Post WHERE created_At >= :from AND created_At < :to AND deleted_At IS NULL ORDER BY created_At, id LIMIT :limit")
+    Flux<Post> findByCreatedAtRange(OffsetDateTime from, OffsetDateTime to, int limit);
+    /**
+     * Deletes the post and returns the deleted row in the same statement.
+     */
+    @Query("SELECT * FROM OLD TABLE (DELETE FROM Post WHERE id = :id AND deleted_At IS NULL)")
+    Mono<Post> deleteAndReturnById(Long id);
+    @Query("SELECT * FROM OLD TABLE (DELETE FROM Post WHERE id IN (:ids) AND deleted_At IS NULL)")
+    Flux<Post> deleteAndReturnAllById(Collection<Long> ids);
+    /**
+     * Tombstones the post and returns it in the same statement; the row is purged later.
+     */
+    @Query("SELECT * FROM FINAL TABLE (UPDATE Post SET deleted_At = :deletedAt WHERE id = :id AND deleted_At IS NULL)")
+    Mono<Post> softDeleteAndReturnById(Long id, OffsetDateTime deletedAt);
+    @Query("SELECT * FROM FINAL TABLE (UPDATE Post SET deleted_At = :deletedAt WHERE id IN (:ids) AND deleted_At IS NULL)")
+    Flux<Post> softDeleteAndReturnAllById(Collection<Long> ids, OffsetDateTime deletedAt);
+    @Modifying
+    @Query("DELETE FROM Post WHERE id IN (SELECT id FROM Post WHERE deleted_At < :deletedBefore ORDER BY id LIMIT :batchSize)")
+    Mono<Integer> purgeDeleted(OffsetDateTime deletedBefore, int batchSize);
 }
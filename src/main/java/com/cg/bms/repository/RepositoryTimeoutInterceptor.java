@@ -0,0 +1,61 @@
+package com.cg.bms.repository;
+
+import com.cg.bms.exception.DatabaseBusyException;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.dao.QueryTimeoutException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.pool.PoolAcquirePendingLimitException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds every repository call by a statement timeout and turns database saturation into
+ * {@link DatabaseBusyException}.
+ * <p>
+ * A {@link Mono} must complete within the timeout. A {@link Flux} must produce its first row (or
+ * complete) within the timeout, which covers running the statement but not how fast a subscriber
+ * consumes a long stream. Methods marked {@link TimeoutPerStatement} bound each of their statements
+ * themselves and are not timed as a whole, so a large but healthy write is not cut off. A timed-out
+ * call or statement, a timed-out connection acquisition and a full acquisition queue all fail with
+ * {@code DatabaseBusyException}, which clients may retry.
+ */
+public class RepositoryTimeoutInterceptor implements MethodInterceptor {
+    private final Duration timeout;
+
+    public RepositoryTimeoutInterceptor(Duration timeout){
+        this.timeout=timeout;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        String method = invocation.getMethod().getName();
+        boolean perStatement = invocation.getMethod().isAnnotationPresent(TimeoutPerStatement.class);
+        if(result instanceof Mono<?> mono){
+            return (perStatement ? mono : mono.timeout(timeout))
+                    .onErrorMap(RepositoryTimeoutInterceptor::isSaturation, ex -> busy(method, ex));
+        }
+        if(result instanceof Flux<?> flux){
+            return (perStatement ? flux : flux.timeout(Mono.delay(timeout), row -> Mono.never()))
+                    .onErrorMap(RepositoryTimeoutInterceptor::isSaturation, ex -> busy(method, ex));
+        }
+        return result;
+    }
+
+    private DatabaseBusyException busy(String method, Throwable cause){
+        return new DatabaseBusyException("Database is busy, "+method+" did not complete within "+timeout+", retry later", cause);
+    }
+
+    private static boolean isSaturation(Throwable ex){
+        for(Throwable current = ex; current!=null; current = current.getCause()){
+            if(current instanceof TimeoutException || current instanceof R2dbcTimeoutException
+                    || current instanceof QueryTimeoutException || current instanceof PoolAcquirePendingLimitException){
+                return true;
+            }
+        }
+        return false;
+    }
+}
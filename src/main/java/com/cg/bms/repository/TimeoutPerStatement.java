@@ -0,0 +1,18 @@
+package com.cg.bms.repository;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a repository method that runs a number of statements growing with the size of its input,
+ * such as one per batch of content chunks. {@link RepositoryTimeoutInterceptor} does not bound the
+ * whole call; the implementation bounds each statement by the statement timeout instead.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TimeoutPerStatement {
+}
@@ -0,0 +1,10 @@
+package com.cg.bms.routing;
+
+/**
+ * Which database a reactive pipeline's queries go to. The route is carried in the Reactor context
+ * under {@code ConnectionRoute.class}.
+ */
+public enum ConnectionRoute {
+    PRIMARY,
+    REPLICA
+}
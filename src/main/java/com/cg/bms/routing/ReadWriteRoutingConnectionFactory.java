@@ -0,0 +1,24 @@
+package com.cg.bms.routing;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+import java.util.Map;
+
+/**
+ * Sends connections to the primary or the replica according to the {@link ConnectionRoute} in the
+ * subscriber's context. Without a route, for example during schema migration, the primary is used.
+ */
+public class ReadWriteRoutingConnectionFactory extends AbstractRoutingConnectionFactory {
+
+    public ReadWriteRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica){
+        setTargetConnectionFactories(Map.of(ConnectionRoute.PRIMARY, primary, ConnectionRoute.REPLICA, replica));
+        setDefaultTargetConnectionFactory(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(ConnectionRoute.class)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.cg.bms.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.ReflectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Routes the queries of {@link ReadReplica} methods to the replica and those of the bean's other
+ * methods to the primary, by writing a {@link ConnectionRoute} into the returned publisher's
+ * context. A route already set by an outer caller is kept.
+ * <p>
+ * With a non-zero read-your-writes window, a principal that has just written reads from the primary
+ * until the window has passed, so it never sees a replica that has not caught up with its own
+ * change. Other principals keep reading from the replica.
+ */
+public class ReadWriteRoutingInterceptor implements MethodInterceptor {
+    /**
+     * Every method of a bean that declares at least one {@link ReadReplica} method.
+     */
+    public static final Pointcut POINTCUT = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return method.getDeclaringClass()!=Object.class
+                    && Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(targetClass)).anyMatch(ReadWriteRoutingInterceptor::isRead);
+        }
+    };
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadWriteRoutingInterceptor(Duration readYourWrites){
+        this.recentWriters = readYourWrites.isZero() ? null : Caffeine.newBuilder()
+                .expireAfterWrite(readYourWrites)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        boolean read = isRead(AopUtils.getMostSpecificMethod(invocation.getMethod(), AopUtils.getTargetClass(invocation.getThis())));
+        if(result instanceof Mono<?> mono){
+            return read ? route().flatMap(route -> mono.contextWrite(routed(route)))
+                    : writer().flatMap(principal -> mono.doOnSuccess(value -> principal.ifPresent(this::wrote)))
+                            .contextWrite(routed(ConnectionRoute.PRIMARY));
+        }
+        if(result instanceof Flux<?> flux){
+            return read ? route().flatMapMany(route -> flux.contextWrite(routed(route)))
+                    : writer().flatMapMany(principal -> flux.doOnComplete(() -> principal.ifPresent(this::wrote)))
+                            .contextWrite(routed(ConnectionRoute.PRIMARY));
+        }
+        return result;
+    }
+
+    private Mono<ConnectionRoute> route(){
+        if(recentWriters==null){
+            return Mono.just(ConnectionRoute.REPLICA);
+        }
+        return principal()
+                .map(name -> recentWriters.getIfPresent(name)==null ? ConnectionRoute.REPLICA : ConnectionRoute.PRIMARY)
+                .defaultIfEmpty(ConnectionRoute.REPLICA);
+    }
+
+    /**
+     * The principal to remember once the write succeeds, if read-your-writes is on.
+     */
+    private Mono<Optional<String>> writer(){
+        if(recentWriters==null){
+            return Mono.just(Optional.empty());
+        }
+        return principal().map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    private static Function<Context, Context> routed(ConnectionRoute route){
+        return context -> context.hasKey(ConnectionRoute.class) ? context : context.put(ConnectionRoute.class, route);
+    }
+
+    private void wrote(String principal){
+        recentWriters.put(principal, Boolean.TRUE);
+    }
+
+    private static Mono<String> principal(){
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getName);
+    }
+
+    private static boolean isRead(Method method){
+        return AnnotatedElementUtils.hasAnnotation(method, ReadReplica.class);
+    }
+}
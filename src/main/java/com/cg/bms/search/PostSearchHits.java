@@ -0,0 +1,9 @@
+package com.cg.bms.search;
+
+import java.util.List;
+
+/**
+ * One page of search results: post ids in rank order plus the total number of matches.
+ */
+public record PostSearchHits(List<Long> ids, long totalHits) {
+}
@@ -0,0 +1,303 @@
+package com.cg.bms.search;
+
+import com.cg.bms.exception.InvalidPaginationException;
+import com.cg.bms.exception.InvalidSearchQueryException;
+import com.cg.bms.model.Post;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-process Lucene index over post titles and contents.
+ * <p>
+ * The index lives next to the in-memory database and is kept in sync by the post service's
+ * mutations. Only the first {@code bms.search.max-indexed-content-length} characters of a post's
+ * content are indexed, which bounds the analysis cost of very large posts. Lucene calls block,
+ * so every operation runs on the bounded-elastic scheduler, and writes refresh the searcher before
+ * they complete so a search issued after a mutation sees it.
+ * <p>
+ * A rebuild fills a fresh directory while searches and writes keep using the live one, then
+ * replays the writes made in the meantime and swaps it in. Writes and searches hold the read side
+ * of {@code lock}; only the swap takes the write side.
+ */
+@Slf4j
+@Component
+public class PostSearchIndex {
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final String CONTENT = "content";
+    private static final Map<String, Float> FIELD_BOOSTS = Map.of(TITLE, 2f, CONTENT, 1f);
+    private final Analyzer analyzer;
+    private final Supplier<Directory> directories;
+    private final int maxIndexedContentLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Swapped under the write lock.
+    private volatile Index index;
+    // Rebuilds in progress, each collecting the writes it has to replay; guarded by lock.
+    private final Set<Queue<IndexChange>> rebuilds = new HashSet<>();
+
+    @Autowired
+    public PostSearchIndex(@Value("${bms.search.max-indexed-content-length:1000000}") int maxIndexedContentLength){
+        this(ByteBuffersDirectory::new, maxIndexedContentLength);
+    }
+
+    PostSearchIndex(Supplier<Directory> directories, int maxIndexedContentLength){
+        this.analyzer = new StandardAnalyzer();
+        this.directories = directories;
+        this.maxIndexedContentLength = maxIndexedContentLength;
+        try{
+            this.index = open();
+        }
+        catch(IOException ex){
+            throw new UncheckedIOException("Could not open the post search index", ex);
+        }
+    }
+
+    public int getMaxIndexedContentLength(){
+        return maxIndexedContentLength;
+    }
+
+    /**
+     * Adds the posts to the index, replacing any earlier version of the same posts.
+     */
+    public Mono<Void> index(Collection<Post> posts){
+        return write(writer -> {
+            for(Post post : posts){
+                writer.updateDocument(new Term(ID, String.valueOf(post.getId())), toDocument(post));
+            }
+        });
+    }
+
+    public Mono<Void> index(Post post){
+        return index(List.of(post));
+    }
+
+    public Mono<Void> remove(Collection<Long> ids){
+        Term[] terms = ids.stream().map(id -> new Term(ID, String.valueOf(id))).toArray(Term[]::new);
+        return write(writer -> writer.deleteDocuments(terms));
+    }
+
+    /**
+     * Replaces the whole index with the given posts. Posts are indexed into a fresh directory in
+     * batches as they arrive, so only one batch is held in memory at a time, and searches keep
+     * seeing the complete old index until the new one is swapped in. Writes made while the
+     * rebuild runs are replayed onto the new index before the swap, so a post changed or deleted
+     * after it was read for the rebuild is not resurrected in its old state.
+     */
+    public Mono<Long> rebuild(Flux<Post> posts, int batchSize){
+        return Mono.usingWhen(blocking(this::startRebuild),
+                rebuild -> posts.buffer(batchSize)
+                        .concatMap(batch -> blocking(() -> {
+                            for(Post post : batch){
+                                rebuild.index().writer().updateDocument(new Term(ID, String.valueOf(post.getId())), toDocument(post));
+                            }
+                            return (long) batch.size();
+                        }))
+                        .reduce(0L, Long::sum)
+                        .flatMap(indexed -> blocking(() -> {
+                            swapIn(rebuild);
+                            return indexed;
+                        })),
+                rebuild -> blocking(() -> endRebuild(rebuild)),
+                (rebuild, error) -> blocking(() -> endRebuild(rebuild)),
+                rebuild -> blocking(() -> endRebuild(rebuild)))
+                .doOnNext(indexed -> log.info("Rebuilt post search index with {} posts",indexed));
+    }
+
+    /**
+     * Ranks matching posts by relevance, with title matches weighted above content matches.
+     * Supports the classic Lucene query syntax (quoted phrases, AND/OR, prefix*). An offset past
+     * the number of matching posts is rejected.
+     */
+    public Mono<PostSearchHits> search(String queryText, int offset, int limit){
+        return blocking(() -> {
+            Query query = parse(queryText);
+            SearcherManager searcherManager;
+            IndexSearcher searcher;
+            lock.readLock().lock();
+            try{
+                searcherManager = index.searcherManager();
+                searcher = searcherManager.acquire();
+            }
+            finally{
+                lock.readLock().unlock();
+            }
+            try{
+                // No more hits can be collected than there are documents, whatever offset+limit comes to.
+                int numHits = (int) Math.min((long) offset+limit, Math.max(1, searcher.getIndexReader().maxDoc()));
+                TopDocs topDocs = searcher.search(query, numHits);
+                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                if(offset>scoreDocs.length){
+                    throw new InvalidPaginationException("Offset "+offset+" is past the "+scoreDocs.length+" matching posts");
+                }
+                List<Long> ids = new ArrayList<>();
+                for(int i=offset;i<scoreDocs.length;i++){
+                    ids.add(Long.valueOf(searcher.storedFields().document(scoreDocs[i].doc).get(ID)));
+                }
+                return new PostSearchHits(ids, topDocs.totalHits.value);
+            }
+            finally{
+                searcherManager.release(searcher);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try{
+            index.close();
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Query parse(String queryText){
+        try{
+            return new MultiFieldQueryParser(new String[]{TITLE, CONTENT}, analyzer, FIELD_BOOSTS).parse(queryText);
+        }
+        catch(ParseException ex){
+            throw new InvalidSearchQueryException("Invalid search query - "+queryText);
+        }
+    }
+
+    private Document toDocument(Post post){
+        Document document = new Document();
+        document.add(new StringField(ID, String.valueOf(post.getId()), Field.Store.YES));
+        document.add(new TextField(TITLE, post.getTitle(), Field.Store.NO));
+        String content = post.getContent();
+        if(content!=null){
+            document.add(new TextField(CONTENT, content.length()>maxIndexedContentLength
+                    ? content.substring(0, maxIndexedContentLength) : content, Field.Store.NO));
+        }
+        return document;
+    }
+
+    private Mono<Void> write(IndexChange change){
+        return blocking(() -> {
+            lock.readLock().lock();
+            try{
+                change.apply(index.writer());
+                rebuilds.forEach(changes -> changes.add(change));
+                index.searcherManager().maybeRefreshBlocking();
+            }
+            finally{
+                lock.readLock().unlock();
+            }
+            return null;
+        });
+    }
+
+    private Rebuild startRebuild() throws IOException {
+        Rebuild rebuild = new Rebuild(open(), new ConcurrentLinkedQueue<>());
+        lock.writeLock().lock();
+        try{
+            rebuilds.add(rebuild.changes());
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+        return rebuild;
+    }
+
+    /**
+     * Replays the writes made since the rebuild started and makes its index the live one. Writes
+     * wait for the swap, so none is applied to the old index after the replay.
+     */
+    private void swapIn(Rebuild rebuild) throws IOException {
+        Index replaced;
+        lock.writeLock().lock();
+        try{
+            for(IndexChange change : rebuild.changes()){
+                change.apply(rebuild.index().writer());
+            }
+            rebuild.index().searcherManager().maybeRefreshBlocking();
+            rebuilds.remove(rebuild.changes());
+            replaced = index;
+            index = rebuild.index();
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+        // Searchers still held on the old index stay usable until they are released.
+        replaced.close();
+    }
+
+    /**
+     * Stops collecting writes for the rebuild and discards its index unless it was swapped in.
+     */
+    private Void endRebuild(Rebuild rebuild) throws IOException {
+        lock.writeLock().lock();
+        try{
+            if(!rebuilds.remove(rebuild.changes())){
+                return null;
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+        rebuild.index().close();
+        return null;
+    }
+
+    private Index open() throws IOException {
+        IndexWriter writer = new IndexWriter(directories.get(), new IndexWriterConfig(analyzer));
+        return new Index(writer, new SearcherManager(writer, null));
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call){
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @FunctionalInterface
+    private interface IndexChange {
+        void apply(IndexWriter writer) throws IOException;
+    }
+
+    private record Index(IndexWriter writer, SearcherManager searcherManager){
+        void close() throws IOException {
+            searcherManager.close();
+            writer.close();
+        }
+    }
+
+    private record Rebuild(Index index, Queue<IndexChange> changes){}
+}
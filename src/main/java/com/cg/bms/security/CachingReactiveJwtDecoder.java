@@ -0,0 +1,95 @@
+package com.cg.bms.security;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Remembers successfully decoded tokens so a bearer token that arrives again is not re-parsed and
+ * its signature not re-verified.
+ * <p>
+ * Entries are keyed by the SHA-256 of the token, so raw tokens are never used as map keys, and
+ * expire when the token does (or after {@code maxTimeToLive}, whichever comes first), so a cached
+ * token is never accepted past its {@code exp}. Failed decodes are not cached, and concurrent
+ * decodes of the same token share one verification. Hit and miss counts are published as the
+ * {@code cache.*} meters tagged {@code cache=jwt}.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+    public static final String NAME = "jwt";
+    private final ReactiveJwtDecoder delegate;
+    private final AsyncCache<String, Jwt> cache;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maximumSize, Duration maxTimeToLive,
+                                     MeterRegistry meterRegistry){
+        this(delegate, maximumSize, maxTimeToLive, meterRegistry, Clock.systemUTC());
+    }
+
+    CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maximumSize, Duration maxTimeToLive,
+                              MeterRegistry meterRegistry, Clock clock){
+        this.delegate=delegate;
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilTokenExpiry(maxTimeToLive, clock))
+                .recordStats()
+                .buildAsync(), NAME);
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) {
+        // suppressCancel: one cancelled request must not cancel a verification other requests are waiting on
+        return Mono.fromFuture(() -> this.cache.get(hash(token),
+                (key, executor) -> Mono.defer(() -> this.delegate.decode(token)).toFuture()), true);
+    }
+
+    public CacheStats stats(){
+        return this.cache.synchronous().stats();
+    }
+
+    private static String hash(String token){
+        try{
+            return Base64.getEncoder().encodeToString(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+        }
+        catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private record UntilTokenExpiry(Duration maxTimeToLive, Clock clock) implements Expiry<String, Jwt> {
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            Duration timeToLive = maxTimeToLive;
+            Instant expiresAt = jwt.getExpiresAt();
+            if(expiresAt!=null){
+                Duration remaining = Duration.between(clock.instant(), expiresAt);
+                if(remaining.compareTo(timeToLive)<0){
+                    timeToLive = remaining.isNegative() ? Duration.ZERO : remaining;
+                }
+            }
+            return timeToLive.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, jwt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
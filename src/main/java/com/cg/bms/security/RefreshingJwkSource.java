@@ -0,0 +1,122 @@
+package com.cg.bms.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * JWK source for {@code NimbusReactiveJwtDecoder} that keeps the key set in memory and refreshes it
+ * in the background: once at startup and then every {@code refreshInterval}. Keys published ahead of
+ * a rotation are therefore already known when the first token signed with them arrives.
+ * <p>
+ * A token whose key id is not known triggers one extra fetch, shared by every request waiting on it,
+ * but no more often than {@code minRefreshInterval}, so tokens with made-up key ids cannot be used
+ * to hammer the identity provider. The interval counts from the start of the last fetch, whether or
+ * not it succeeded, so it also holds while the identity provider is down.
+ */
+@Slf4j
+public class RefreshingJwkSource implements Function<SignedJWT, Flux<JWK>>, SmartLifecycle {
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final Duration refreshInterval;
+    private final Duration minRefreshInterval;
+    private final Clock clock;
+    private final AtomicReference<JWKSet> jwkSet = new AtomicReference<>(new JWKSet());
+    private final AtomicReference<Instant> lastFetchStarted = new AtomicReference<>(Instant.MIN);
+    private final AtomicReference<Mono<JWKSet>> inFlight = new AtomicReference<>();
+    private Disposable refreshing;
+
+    public RefreshingJwkSource(WebClient webClient, String jwkSetUri, Duration refreshInterval, Duration minRefreshInterval){
+        this(webClient, jwkSetUri, refreshInterval, minRefreshInterval, Clock.systemUTC());
+    }
+
+    RefreshingJwkSource(WebClient webClient, String jwkSetUri, Duration refreshInterval, Duration minRefreshInterval, Clock clock){
+        this.webClient=webClient;
+        this.jwkSetUri=jwkSetUri;
+        this.refreshInterval=refreshInterval;
+        this.minRefreshInterval=minRefreshInterval;
+        this.clock=clock;
+    }
+
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        List<JWK> keys = selector.select(jwkSet.get());
+        if(!keys.isEmpty() || lastFetchStarted.get().plus(minRefreshInterval).isAfter(clock.instant())){
+            return Flux.fromIterable(keys);
+        }
+        return refresh().flatMapIterable(selector::select);
+    }
+
+    /**
+     * Fetches the key set now, joining a fetch that is already in flight.
+     */
+    public Mono<JWKSet> refresh(){
+        Mono<JWKSet> existing = inFlight.get();
+        if(existing!=null){
+            return existing;
+        }
+        Mono<JWKSet> fetch = fetch().doFinally(signal -> inFlight.set(null)).cache();
+        return inFlight.compareAndSet(null, fetch) ? fetch : refresh();
+    }
+
+    private Mono<JWKSet> fetch(){
+        return webClient.get().uri(jwkSetUri)
+                .retrieve()
+                .bodyToMono(String.class)
+                .handle((body, sink) -> {
+                    try{
+                        sink.next(JWKSet.parse(body));
+                    }
+                    catch(ParseException ex){
+                        sink.error(new IllegalStateException("Invalid JWK set from " + jwkSetUri, ex));
+                    }
+                })
+                .cast(JWKSet.class)
+                .doOnSubscribe(subscription -> lastFetchStarted.set(clock.instant()))
+                .doOnNext(fetched -> {
+                    jwkSet.set(fetched);
+                    log.debug("Fetched {} signing keys from {}",fetched.getKeys().size(),jwkSetUri);
+                });
+    }
+
+    @Override
+    public void start() {
+        this.refreshing = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh()
+                        .onErrorResume(ex -> {
+                            log.warn("Refreshing signing keys from {} failed: {}",jwkSetUri,ex.getMessage());
+                            return Mono.empty();
+                        }), 0)
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if(this.refreshing!=null){
+            this.refreshing.dispose();
+            this.refreshing=null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.refreshing!=null;
+    }
+}
@@ -0,0 +1,238 @@
+package com.cg.bms.service;
+
+import com.cg.bms.cache.PostCache;
+import com.cg.bms.event.PostChangeLog;
+import com.cg.bms.event.PostDataVersion;
+import com.cg.bms.event.PostEvent;
+import com.cg.bms.event.PostEventHub;
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostChange;
+import com.cg.bms.repository.PostChangeRepository;
+import com.cg.bms.repository.PostRepository;
+import com.cg.bms.routing.ConnectionRoute;
+import com.cg.bms.search.PostSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the changes other nodes write to the {@code post_changes} outbox: the posts are evicted
+ * from this node's cache, re-indexed or removed from its search index, and announced to its
+ * subscribers. This node's own changes were already applied when they were made and are skipped.
+ * <p>
+ * Changes are read in id order, {@code bms.changes.batch-size} at a time, starting after a
+ * watermark that begins at the newest change when the node starts. Ids are assigned before commit,
+ * so a lower id can become visible after a higher one; the watermark therefore only moves past an
+ * id once that change has been applied, or once it has stayed missing for
+ * {@code bms.changes.gap-timeout}, as ids of rolled-back transactions do. Changes above the
+ * watermark that were already applied are remembered and not applied twice.
+ * <p>
+ * The outbox is read from the replica, so a post is only evicted once the replica that serves
+ * reads has the change, and refilling the cache cannot bring back the old row. Each applied batch
+ * moves {@link PostDataVersion} on.
+ * <p>
+ * Changes older than {@code bms.changes.retention} are purged in batches, always keeping the
+ * newest so the watermark of a restarted node does not go back.
+ */
+@Slf4j
+@Component
+public class PostChangeTailer implements SmartLifecycle {
+    private final PostChangeRepository postChangeRepository;
+    private final PostRepository postRepository;
+    private final PostCache postCache;
+    private final PostSearchIndex postSearchIndex;
+    private final PostEventHub postEventHub;
+    private final PostDataVersion postDataVersion;
+    private final String nodeId;
+    private final Duration pollInterval;
+    private final int batchSize;
+    private final Duration gapTimeout;
+    private final Duration retention;
+    private final Duration purgeInterval;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final Set<Long> appliedAboveWatermark = new HashSet<>();
+    // Ids at or below the watermark are dropped whenever it moves, whether their change turned up or timed out.
+    private final NavigableMap<Long, Long> gapsSince = new TreeMap<>();
+    private volatile Long watermark;
+    private Disposable.Composite tailing;
+
+    public PostChangeTailer(PostChangeRepository postChangeRepository, PostRepository postRepository, PostCache postCache,
+                            PostSearchIndex postSearchIndex, PostEventHub postEventHub, PostChangeLog postChangeLog,
+                            PostDataVersion postDataVersion,
+                            @Value("${bms.changes.poll-interval:PT1S}") Duration pollInterval,
+                            @Value("${bms.changes.batch-size:500}") int batchSize,
+                            @Value("${bms.changes.gap-timeout:PT10S}") Duration gapTimeout,
+                            @Value("${bms.changes.retention:PT24H}") Duration retention,
+                            @Value("${bms.changes.purge-interval:PT1M}") Duration purgeInterval){
+        this.postChangeRepository=postChangeRepository;
+        this.postRepository=postRepository;
+        this.postCache=postCache;
+        this.postSearchIndex=postSearchIndex;
+        this.postEventHub=postEventHub;
+        this.postDataVersion=postDataVersion;
+        this.nodeId=postChangeLog.getNodeId();
+        this.pollInterval=pollInterval;
+        this.batchSize=batchSize;
+        this.gapTimeout=gapTimeout;
+        this.retention=retention;
+        this.purgeInterval=purgeInterval;
+    }
+
+    /**
+     * Applies every change that is visible now, one batch at a time, and emits the number of
+     * changes applied. Emits 0 without reading when another poll is still running.
+     */
+    public Mono<Long> poll(){
+        return Mono.defer(() -> {
+            if(!polling.compareAndSet(false, true)){
+                return Mono.just(0L);
+            }
+            Mono<Long> start = watermark==null ? this.postChangeRepository.findLatestId().doOnNext(latest -> {
+                watermark=latest;
+                this.postDataVersion.applied(latest, Set.of());
+            }) : Mono.just(watermark);
+            return start.then(Mono.defer(this::pollBatch))
+                    .expand(batch -> batch.more() ? pollBatch() : Mono.empty())
+                    .reduce(0L, (applied, batch) -> applied+batch.applied())
+                    .contextWrite(Context.of(ConnectionRoute.class, ConnectionRoute.REPLICA))
+                    .doFinally(signal -> polling.set(false));
+        });
+    }
+
+    /**
+     * Purges expired changes, one batch per statement, and emits the number of rows removed.
+     */
+    public Mono<Long> purge(){
+        OffsetDateTime changedBefore = OffsetDateTime.ofInstant(Instant.now().minus(retention), ZoneOffset.UTC);
+        return this.postChangeRepository.purgeChanged(changedBefore, batchSize)
+                .expand(purged -> purged<batchSize ? Mono.empty() : this.postChangeRepository.purgeChanged(changedBefore, batchSize))
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * A full batch means more changes may follow, unless the watermark is held up by a gap, in
+     * which case reading again would only return the same batch.
+     */
+    private Mono<Batch> pollBatch(){
+        long before = watermark;
+        return this.postChangeRepository.findAfter(before, batchSize)
+                .collectList()
+                .flatMap(changes -> {
+                    List<PostChange> unapplied = changes.stream().filter(change -> !appliedAboveWatermark.contains(change.getId())).toList();
+                    return apply(unapplied)
+                            .then(Mono.fromCallable(() -> {
+                                advance(unapplied);
+                                return new Batch(unapplied.size(), changes.size()==batchSize && watermark>before);
+                            }));
+                });
+    }
+
+    private Mono<Void> apply(List<PostChange> changes){
+        List<PostChange> remote = changes.stream().filter(change -> !nodeId.equals(change.getNodeId())).toList();
+        if(remote.isEmpty()){
+            return Mono.empty();
+        }
+        remote.forEach(change -> this.postCache.invalidate(change.getPostId()));
+        Set<Long> changedIds = remote.stream().filter(change -> change.getChangeType()!=PostEvent.Type.DELETED)
+                .map(PostChange::getPostId).collect(Collectors.toSet());
+        Set<Long> deletedIds = remote.stream().filter(change -> change.getChangeType()==PostEvent.Type.DELETED)
+                .map(PostChange::getPostId).collect(Collectors.toSet());
+        // Only the prefix the index keeps is read. Subscribers get the same rows without that partial
+        // content, so a selected content field is loaded in full rather than served truncated.
+        Mono<Map<Long, Post>> current = changedIds.isEmpty() ? Mono.just(Map.of())
+                : this.postRepository.findAllByIdWithContentPrefix(changedIds, this.postSearchIndex.getMaxIndexedContentLength())
+                        .collectMap(Post::getId);
+        return current.flatMap(posts -> this.postSearchIndex.index(posts.values())
+                .then(this.postSearchIndex.remove(deletedIds))
+                .then(Mono.fromRunnable(() -> posts.values().forEach(post -> post.setContent(null))))
+                .thenMany(Flux.fromIterable(remote).concatMap(change -> announce(change, posts)))
+                .then());
+    }
+
+    private Mono<Void> announce(PostChange change, Map<Long, Post> posts){
+        if(change.getChangeType()==PostEvent.Type.DELETED){
+            return this.postEventHub.deleted(List.of(change.toPost()));
+        }
+        Post post = posts.get(change.getPostId());
+        // Gone since the change was written; its delete will be announced on its own.
+        if(post==null){
+            return Mono.empty();
+        }
+        return change.getChangeType()==PostEvent.Type.ADDED ? this.postEventHub.added(List.of(post)) : this.postEventHub.updated(List.of(post));
+    }
+
+    private void advance(List<PostChange> applied){
+        applied.forEach(change -> appliedAboveWatermark.add(change.getId()));
+        long highest = appliedAboveWatermark.stream().mapToLong(Long::longValue).max().orElse(watermark);
+        long now = System.nanoTime();
+        while(watermark<highest){
+            long next = watermark+1;
+            if(!appliedAboveWatermark.remove(next)){
+                long since = gapsSince.computeIfAbsent(next, id -> now);
+                if(now-since<gapTimeout.toNanos()){
+                    break;
+                }
+                log.warn("Skipping post change {} that did not appear within {}",next,gapTimeout);
+            }
+            watermark=next;
+        }
+        gapsSince.headMap(watermark, true).clear();
+        this.postDataVersion.applied(watermark, appliedAboveWatermark);
+    }
+
+    @Override
+    public void start() {
+        this.tailing = Disposables.composite(
+                Flux.interval(Duration.ZERO, pollInterval)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> poll()
+                                .onErrorResume(ex -> {
+                                    log.warn("Tailing post changes failed",ex);
+                                    return Mono.empty();
+                                }), 0)
+                        .subscribe(),
+                Flux.interval(purgeInterval, purgeInterval)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> purge()
+                                .filter(purged -> purged>0)
+                                .doOnNext(purged -> log.info("Purged {} post changes",purged))
+                                .onErrorResume(ex -> {
+                                    log.warn("Purging post changes failed",ex);
+                                    return Mono.empty();
+                                }), 0)
+                        .subscribe());
+    }
+
+    @Override
+    public void stop() {
+        if(this.tailing!=null){
+            this.tailing.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.tailing!=null && !this.tailing.isDisposed();
+    }
+
+    private record Batch(long applied, boolean more) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.cg.bms.service;
+
+import com.cg.bms.exception.InvalidPaginationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque Relay cursors. Keyset pagination wraps the post id, which is the keyset column;
+ * ranked full-text results wrap the 0-based rank of the hit. Clients cannot rely on either format.
+ */
+final class PostCursor {
+    private static final String PREFIX = "post:";
+    private static final String RANK_PREFIX = "rank:";
+
+    private PostCursor(){
+    }
+
+    static String encode(Long id){
+        return encode(PREFIX, id);
+    }
+
+    static Long decode(String cursor){
+        return decode(PREFIX, cursor);
+    }
+
+    static String encodeRank(int rank){
+        return encode(RANK_PREFIX, rank);
+    }
+
+    static int decodeRank(String cursor){
+        long rank = decode(RANK_PREFIX, cursor);
+        if(rank<0 || rank>=Integer.MAX_VALUE){
+            throw new InvalidPaginationException("Invalid cursor - "+cursor);
+        }
+        return (int) rank;
+    }
+
+    private static String encode(String prefix, long value){
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((prefix + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decode(String prefix, String cursor){
+        try{
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if(!value.startsWith(prefix)){
+                throw new InvalidPaginationException("Invalid cursor - "+cursor);
+            }
+            return Long.parseLong(value.substring(prefix.length()));
+        }
+        catch(IllegalArgumentException ex){
+            throw new InvalidPaginationException("Invalid cursor - "+cursor);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.cg.bms.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Builds the in-memory search index from the database once the application is up. The build
+ * runs in the background; until it finishes, full-text searches only see posts written since startup.
+ */
+@Slf4j
+@Component
+public class PostSearchIndexInitializer {
+    private final PostService postService;
+
+    public PostSearchIndexInitializer(PostService postService){
+        this.postService=postService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex(){
+        Mono.defer(this.postService::reindexPosts)
+                .subscribe(indexed -> {}, ex -> log.warn("Building the post search index failed",ex));
+    }
+}
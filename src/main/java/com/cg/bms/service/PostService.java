@@ -1,19 +1,39 @@
 package com.cg.bms.service;
 
 import com.cg.bms.model.Post;
+import com.cg.bms.model.PostConnection;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostFilter;
 import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.model.PostSort;
+import com.cg.bms.model.PostUpdateInput;
 import org.springframework.data.domain.PageRequest;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
-import java.util.concurrent.ExecutionException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface PostService {
-    Mono<PostData> getPosts(PageRequest pageRequest) throws ExecutionException, InterruptedException;
-    Flux<Post> getAllPosts();
+    Mono<PostData> getPosts(PageRequest pageRequest, PostProjection projection);
+    Mono<PostConnection> getPostsConnection(Integer first, String after, Integer last, String before, PostProjection projection);
+    Flux<Post> getAllPosts(PostProjection projection);
+    Flux<Post> streamAllPosts(PostProjection projection);
     Mono<Post> getPostById(Long id);
+    Flux<Post> getPostsByIds(Collection<Long> ids);
+    Flux<Post> searchPosts(PostFilter filter, List<PostSort> sort, int limit, PostProjection projection);
+    Mono<PostConnection> searchPostsByText(String query, int first, String after);
+    Mono<Long> reindexPosts();
     Mono<Post> addPost(PostInput postInput);
-    Mono<Post> updatePost(Long id,PostInput postInput);
-    Mono<Post> deletePost(Long id);
+    Mono<Post> updatePost(Long id,PostInput postInput,Long expectedVersion);
+    Mono<Post> deletePost(Long id, PostProjection projection);
+    Mono<List<Post>> addPosts(List<PostInput> postInputs);
+    Mono<List<Post>> updatePosts(List<PostUpdateInput> postUpdates);
+    Mono<List<Post>> deletePosts(List<Long> ids, PostProjection projection);
+    Mono<Post> appendPostContent(Long id, String chunk, PostProjection projection);
+    Mono<Map<Long, String>> getPostContents(Collection<Long> ids);
+    Mono<Map<PostContentSlice, String>> getPostContentSlices(Collection<PostContentSlice> slices);
+    Mono<Map<Long, Integer>> getPostContentLengths(Collection<Long> ids);
 }
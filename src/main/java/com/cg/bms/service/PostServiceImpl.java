@@ -1,95 +1,398 @@
 package com.cg.bms.service;
 
+import com.cg.bms.cache.PostCache;
+import com.cg.bms.event.AfterCommit;
+import com.cg.bms.event.PostChangeLog;
 import com.cg.bms.exception.DuplicatePostException;
+import com.cg.bms.exception.InvalidPaginationException;
+import com.cg.bms.exception.PostContentTooLargeException;
 import com.cg.bms.exception.PostNotFoundException;
+import com.cg.bms.exception.PostVersionConflictException;
+import com.cg.bms.logging.LogFields;
+import com.cg.bms.model.PageInfo;
 import com.cg.bms.model.Post;
+import com.cg.bms.model.PostConnection;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostFilter;
+import com.cg.bms.model.PostEdge;
 import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.model.PostSort;
+import com.cg.bms.model.PostUpdateInput;
 import com.cg.bms.repository.PostRepository;
+import com.cg.bms.routing.ReadReplica;
+import com.cg.bms.search.PostSearchIndex;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import static com.cg.bms.logging.RequestLogSamplingFilter.REQUEST;
 
 @Slf4j
 @Service
+@Timed("bms.service")
 public class PostServiceImpl implements PostService{
 
+    private static final int DEFAULT_CONNECTION_SIZE = 10;
+    private static final int STREAM_PREFETCH = 64;
+    private static final int REINDEX_BATCH_SIZE = 100;
     private final PostRepository postRepository;
+    private final PostCache postCache;
+    private final PostSearchIndex postSearchIndex;
+    private final PostChangeLog postChangeLog;
+    @Value("${bms.pagination.single-query:false}")
+    private boolean singleQueryPagination;
+    @Value("${bms.posts.soft-delete.enabled:false}")
+    private boolean softDelete;
+    @Value("${bms.posts.max-results:1000}")
+    private int maxAllPostsResults = 1000;
 
     @Autowired
-    public PostServiceImpl(PostRepository postRepository){
+    public PostServiceImpl(PostRepository postRepository, PostCache postCache, PostSearchIndex postSearchIndex, PostChangeLog postChangeLog){
         this.postRepository=postRepository;
+        this.postCache=postCache;
+        this.postSearchIndex=postSearchIndex;
+        this.postChangeLog=postChangeLog;
     }
 
     @Override
-    public Mono<PostData> getPosts(PageRequest pageRequest) throws ExecutionException, InterruptedException {
-        Flux<Post> postData = postRepository.findAllBy(pageRequest);
-        Long totalCount = postRepository.count().toFuture().get();
-        List<Post> postList = new ArrayList<>();
-        postData.subscribe(postList::add);
-    return
-        Mono.just(new PostData(
-            postList,
-            pageRequest.getPageSize(),
-            totalCount, (totalCount%pageRequest.getPageSize()==0)?(totalCount/pageRequest.getPageSize()):(totalCount / pageRequest.getPageSize()) + 1,
-            pageRequest.getPageNumber()));
+    @ReadReplica
+    public Mono<PostData> getPosts(PageRequest pageRequest, PostProjection projection) {
+        if(singleQueryPagination){
+            return this.postRepository.findPageWithTotalCount(pageRequest, projection)
+                    .map(page -> toPostData(page.getContent(), page.getTotalElements(), pageRequest));
+        }
+        return Mono.zip(this.postRepository.findAllBy(pageRequest, projection).collectList(), this.postRepository.count())
+                .map(page -> toPostData(page.getT1(), page.getT2(), pageRequest));
     }
 
     @Override
-    public Flux<Post> getAllPosts() {
-        log.info("Fetching all posts");
-        return this.postRepository.findAll();
+    @ReadReplica
+    public Mono<PostConnection> getPostsConnection(Integer first, String after, Integer last, String before, PostProjection projection) {
+        if(first!=null && last!=null){
+            return Mono.error(new InvalidPaginationException("Pass either first or last, not both"));
+        }
+        Long afterId = after==null ? Long.MIN_VALUE : PostCursor.decode(after);
+        Long beforeId = before==null ? Long.MAX_VALUE : PostCursor.decode(before);
+        if(last!=null){
+            return this.postRepository
+                    .findKeysetPage(afterId, beforeId, Sort.Direction.DESC, last+1, projection)
+                    .collectList()
+                    .map(posts -> {
+                        boolean hasPreviousPage = posts.size()>last;
+                        List<Post> page = new ArrayList<>(posts.subList(0, Math.min(last, posts.size())));
+                        Collections.reverse(page);
+                        return toPostConnection(page, hasPreviousPage, before!=null);
+                    });
+        }
+        int pageSize = first==null ? DEFAULT_CONNECTION_SIZE : first;
+        return this.postRepository
+                .findKeysetPage(afterId, beforeId, Sort.Direction.ASC, pageSize+1, projection)
+                .collectList()
+                .map(posts -> toPostConnection(
+                        posts.subList(0, Math.min(pageSize, posts.size())), after!=null, posts.size()>pageSize));
+    }
+
+    @Override
+    @ReadReplica
+    public Flux<Post> getAllPosts(PostProjection projection) {
+        log.info(REQUEST,"Fetching all posts");
+        return this.postRepository.findAllBy(PageRequest.of(0, maxAllPostsResults, Sort.by("id")), projection);
+    }
+
+    @Override
+    @ReadReplica
+    public Flux<Post> streamAllPosts(PostProjection projection) {
+        log.info(REQUEST,"Streaming all posts");
+        return this.postRepository.findAll(projection).limitRate(STREAM_PREFETCH);
     }
 
     @Override
+    @ReadReplica
+    public Flux<Post> searchPosts(PostFilter filter, List<PostSort> sort, int limit, PostProjection projection) {
+        log.info(REQUEST,"Searching posts matching {}",LogFields.truncated(filter));
+        List<Sort.Order> orders = new ArrayList<>();
+        if(sort!=null){
+            sort.stream().map(PostSort::toOrder).forEach(orders::add);
+        }
+        // id breaks ties so equal sort keys still come back in a stable order.
+        if(orders.stream().noneMatch(order -> order.getProperty().equals("id"))){
+            orders.add(Sort.Order.asc("id"));
+        }
+        return this.postRepository.search(filter, Sort.by(orders), limit, projection);
+    }
+
+    @Override
+    @ReadReplica
     public Mono<Post> getPostById(Long id) {
-    log.info("Fetching post for id - "+id);
-    return this.postRepository.findById(id)
+    log.info(REQUEST,"Fetching post for id - {}",id);
+    return this.postCache.get(id, key -> this.postRepository.findById(key, PostProjection.SUMMARY))
             .switchIfEmpty(throwNoPostFoundException(id));
     }
 
     @Override
+    @ReadReplica
+    public Flux<Post> getPostsByIds(Collection<Long> ids) {
+        log.info(REQUEST,"Fetching posts for ids - {}",LogFields.truncated(ids));
+        return this.postCache.getAll(ids, keys -> this.postRepository.findAllById(keys, PostProjection.SUMMARY).collectMap(Post::getId))
+                .flatMapIterable(Map::values);
+    }
+
+    @Override
+    @Transactional
     public Mono<Post> addPost(PostInput postInput) {
-        log.info("Adding post for "+postInput.toString());
+        log.info(REQUEST,"Adding post for {}",postInput);
         return this.postRepository
         .save(new Post(postInput))
+        .flatMap(post -> this.postRepository.insertContent(List.of(post)).thenReturn(post))
+        .flatMap(post -> AfterCommit.run(() -> {
+            this.postCache.put(post);
+            return this.postSearchIndex.index(post);
+        }).thenReturn(post))
+        .flatMap(post -> this.postChangeLog.added(List.of(post)).thenReturn(post))
         .onErrorMap(DuplicateKeyException.class, ex -> new DuplicatePostException("Post already exists!"));
     }
 
     @Override
-    public Mono<Post> updatePost(Long id, PostInput postInput) {
-        log.info("Updating post for id - {} with values - {}",id,postInput);
-        return this.postRepository.findById(id).flatMap(post->{
-            post.setUpdatedAt(OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC));
-            post.setAuthor(postInput.getAuthor());
-            post.setTitle(postInput.getTitle());
-            post.setContent(postInput.getContent());
-            return this.postRepository.save(post);
-        }).switchIfEmpty(throwNoPostFoundException(id));
+    @Transactional
+    public Mono<Post> updatePost(Long id, PostInput postInput, Long expectedVersion) {
+        log.info(REQUEST,"Updating post for id - {} at version - {} with values - {}",id,expectedVersion,postInput);
+        return this.postRepository.updateAndReturnById(id, postInput.getTitle(), postInput.getContent(), postInput.getAuthor(),
+                        OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC), expectedVersion)
+        .flatMap(post -> AfterCommit.run(() -> {
+            this.postCache.put(post);
+            return this.postSearchIndex.index(post);
+        }).thenReturn(post))
+        .flatMap(post -> this.postChangeLog.updated(List.of(post)).thenReturn(post))
+        .switchIfEmpty(Mono.defer(() -> expectedVersion==null
+                ? throwNoPostFoundException(id)
+                : this.postRepository.existsById(id).flatMap(exists -> exists
+                        ? Mono.error(new PostVersionConflictException("Post id - "+id+" was modified since version "+expectedVersion))
+                        : throwNoPostFoundException(id))));
     }
 
     @Override
-    public Mono<Post> deletePost(Long id) {
-        log.info("Deleting post for id - "+id);
-        return this.postRepository
-        .findById(id)
-        .map(
-            post -> {
-              this.postRepository.deleteById(id).subscribe();
-              return post;
-            })
+    @Transactional
+    public Mono<Post> deletePost(Long id, PostProjection projection) {
+        log.info(REQUEST,"Deleting post for id - {}",id);
+        Mono<Post> deleted = softDelete
+                ? this.postRepository.softDeleteAndReturnById(id, OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC))
+                : this.postRepository.deleteAndReturnById(id);
+        return contentBeforeDelete(List.of(id), projection)
+        .flatMap(contents -> deleted.doOnNext(post -> attachContent(post, contents)))
+        .flatMap(post -> AfterCommit.run(() -> {
+            this.postCache.invalidate(id);
+            return this.postSearchIndex.remove(List.of(id));
+        }).thenReturn(post))
+        .flatMap(post -> this.postChangeLog.deleted(List.of(post)).thenReturn(post))
         .switchIfEmpty(throwNoPostFoundException(id));
     }
+    @Override
+    @Transactional
+    public Mono<List<Post>> addPosts(List<PostInput> postInputs) {
+        log.info(REQUEST,"Adding {} posts in one batch",postInputs.size());
+        List<Post> posts = postInputs.stream().map(Post::new).toList();
+        return this.postRepository.insertAll(posts)
+                .collectList()
+                .map(ids -> {
+                    for(int i=0;i<posts.size();i++){
+                        posts.get(i).setId(ids.get(i));
+                    }
+                    return posts;
+                })
+                .flatMap(added -> AfterCommit.run(() -> {
+                    added.forEach(this.postCache::put);
+                    return this.postSearchIndex.index(added);
+                }).thenReturn(added))
+                .flatMap(added -> this.postChangeLog.added(added).thenReturn(added))
+                .onErrorMap(DuplicateKeyException.class, ex -> new DuplicatePostException("Post already exists!"));
+    }
+
+    @Override
+    @Transactional
+    public Mono<List<Post>> updatePosts(List<PostUpdateInput> postUpdates) {
+        log.info(REQUEST,"Updating {} posts in one batch",postUpdates.size());
+        OffsetDateTime updatedAt = OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        List<Post> posts = postUpdates.stream().map(postUpdate -> {
+            Post post = new Post(postUpdate.getPostInput());
+            post.setId(postUpdate.getId());
+            post.setUpdatedAt(updatedAt);
+            return post;
+        }).toList();
+        List<Long> ids = posts.stream().map(Post::getId).toList();
+        // The rows are re-read without content, which is taken from the input instead.
+        Map<Long, String> contents = new HashMap<>();
+        posts.forEach(post -> contents.put(post.getId(), post.getContent()));
+        return this.postRepository.updateAll(posts)
+                .thenMany(this.postRepository.findAllById(ids, PostProjection.SUMMARY))
+                .doOnNext(post -> post.setContent(contents.get(post.getId())))
+                .collectMap(Post::getId)
+                .flatMap(updated -> AfterCommit.run(() -> {
+                    ids.forEach(this.postCache::invalidate);
+                    return this.postSearchIndex.index(updated.values());
+                }).thenReturn(updated))
+                .flatMap(updated -> this.postChangeLog.updated(updated.values()).thenReturn(updated))
+                .map(updated -> inInputOrder(ids, updated));
+    }
+
+    @Override
+    @Transactional
+    public Mono<List<Post>> deletePosts(List<Long> ids, PostProjection projection) {
+        log.info(REQUEST,"Deleting {} posts in one batch",ids.size());
+        Flux<Post> deleted = softDelete
+                ? this.postRepository.softDeleteAndReturnAllById(ids, OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC))
+                : this.postRepository.deleteAndReturnAllById(ids);
+        return contentBeforeDelete(ids, projection)
+                .flatMapMany(contents -> deleted.doOnNext(post -> attachContent(post, contents)))
+                .collectMap(Post::getId)
+                .flatMap(byId -> AfterCommit.run(() -> {
+                    ids.forEach(this.postCache::invalidate);
+                    return this.postSearchIndex.remove(byId.keySet());
+                }).thenReturn(byId))
+                .flatMap(byId -> this.postChangeLog.deleted(byId.values()).thenReturn(byId))
+                .map(byId -> inInputOrder(ids, byId));
+    }
+
+    @Override
+    @Transactional
+    public Mono<Post> appendPostContent(Long id, String chunk, PostProjection projection) {
+        log.info(REQUEST,"Appending {} characters to content of post id - {}",chunk.length(),id);
+        return this.postRepository
+                .appendContent(id, chunk, OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC), PostInput.MAX_CONTENT_LENGTH)
+                .flatMap(updated -> updated>0
+                        ? reindexContentPrefix(id).then(this.postRepository.findById(id, projection))
+                                .flatMap(post -> this.postChangeLog.updated(List.of(post)).thenReturn(post))
+                        : this.postRepository.existsById(id).flatMap(exists -> exists
+                                ? Mono.error(new PostContentTooLargeException("Content of post id - "+id+" would exceed "+PostInput.MAX_CONTENT_LENGTH+" characters"))
+                                : throwNoPostFoundException(id)));
+    }
+
+    @Override
+    @ReadReplica
+    public Mono<PostConnection> searchPostsByText(String query, int first, String after) {
+        log.info(REQUEST,"Full-text search for '{}'",query);
+        int offset = after==null ? 0 : PostCursor.decodeRank(after)+1;
+        return this.postSearchIndex.search(query, offset, first)
+                .flatMap(hits -> getPostsByIds(hits.ids()).collectMap(Post::getId).map(postsById -> {
+                    List<PostEdge> edges = new ArrayList<>();
+                    for(int i=0;i<hits.ids().size();i++){
+                        Post post = postsById.get(hits.ids().get(i));
+                        // The index can briefly trail a delete; such hits are dropped rather than returned as null.
+                        if(post!=null){
+                            edges.add(new PostEdge(PostCursor.encodeRank(offset+i), post));
+                        }
+                    }
+                    return new PostConnection(edges, new PageInfo(offset>0, offset+hits.ids().size()<hits.totalHits(),
+                            edges.isEmpty() ? null : edges.get(0).getCursor(),
+                            edges.isEmpty() ? null : edges.get(edges.size()-1).getCursor()));
+                }));
+    }
+
+    @Override
+    public Mono<Long> reindexPosts() {
+        log.info(REQUEST,"Rebuilding the post search index");
+        return this.postSearchIndex.rebuild(this.postRepository.findAllWithContentPrefix(this.postSearchIndex.getMaxIndexedContentLength())
+                .limitRate(STREAM_PREFETCH), REINDEX_BATCH_SIZE);
+    }
+
+    @Override
+    @ReadReplica
+    public Mono<Map<Long, String>> getPostContents(Collection<Long> ids) {
+        return this.postRepository.findAllById(ids, PostProjection.FULL)
+                .filter(post -> post.getContent()!=null)
+                .collectMap(Post::getId, Post::getContent);
+    }
+
+    @Override
+    @ReadReplica
+    public Mono<Map<PostContentSlice, String>> getPostContentSlices(Collection<PostContentSlice> slices) {
+        return this.postRepository.findContentSlices(slices);
+    }
+
+    @Override
+    @ReadReplica
+    public Mono<Map<Long, Integer>> getPostContentLengths(Collection<Long> ids) {
+        return this.postRepository.findContentLengths(ids);
+    }
+
+    /**
+     * Re-indexes a post after an append without loading more content than the index keeps. The
+     * cached post is dropped and the index written once the append commits.
+     */
+    private Mono<Void> reindexContentPrefix(Long id){
+        PostContentSlice prefix = new PostContentSlice(id, 0, this.postSearchIndex.getMaxIndexedContentLength());
+        return Mono.zip(this.postRepository.findById(id, PostProjection.SUMMARY),
+                        this.postRepository.findContentSlices(List.of(prefix)))
+                .flatMap(post -> {
+                    post.getT1().setContent(post.getT2().get(prefix));
+                    return AfterCommit.run(() -> {
+                        this.postCache.invalidate(id);
+                        return this.postSearchIndex.index(post.getT1());
+                    });
+                });
+    }
+
+    /**
+     * Reads the content of posts about to be deleted when the caller asked for it, since a hard
+     * delete takes the content chunks with the row.
+     */
+    private Mono<Map<Long, String>> contentBeforeDelete(Collection<Long> ids, PostProjection projection){
+        if(!projection.includes("content")){
+            return Mono.just(Map.of());
+        }
+        return this.postRepository.findAllById(ids, PostProjection.FULL)
+                .collect(HashMap::new, (contents, post) -> contents.put(post.getId(), post.getContent()));
+    }
+
+    private static void attachContent(Post post, Map<Long, String> contents){
+        if(contents.containsKey(post.getId())){
+            post.setContent(contents.get(post.getId()));
+        }
+    }
+
+    /**
+     * Lines batch results up with the requested ids; ids that matched no post get a null entry.
+     */
+    private List<Post> inInputOrder(List<Long> ids, Map<Long, Post> postsById){
+        List<Post> posts = new ArrayList<>(ids.size());
+        ids.forEach(id -> posts.add(postsById.get(id)));
+        return posts;
+    }
+    private PostData toPostData(List<Post> posts, long totalCount, PageRequest pageRequest){
+        return new PostData(
+                posts,
+                pageRequest.getPageSize(),
+                totalCount,
+                (totalCount%pageRequest.getPageSize()==0)?(totalCount/pageRequest.getPageSize()):(totalCount/pageRequest.getPageSize())+1,
+                pageRequest.getPageNumber());
+    }
+    private PostConnection toPostConnection(List<Post> posts, boolean hasPreviousPage, boolean hasNextPage){
+        List<PostEdge> edges = posts.stream()
+                .map(post -> new PostEdge(PostCursor.encode(post.getId()), post))
+                .toList();
+        return new PostConnection(edges, new PageInfo(
+                hasPreviousPage,
+                hasNextPage,
+                edges.isEmpty() ? null : edges.get(0).getCursor(),
+                edges.isEmpty() ? null : edges.get(edges.size()-1).getCursor()));
+    }
     private Mono<Post> throwNoPostFoundException(Long id){
         return Mono.error(new PostNotFoundException("No post found for id - "+id));
     }
@@ -0,0 +1,77 @@
+package com.cg.bms.service;
+
+import com.cg.bms.repository.PostRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Physically removes soft-deleted posts once they are older than the retention period.
+ * Rows are purged in small batches so a backlog of tombstones never turns into one long
+ * delete holding locks on the Post table.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name="bms.posts.soft-delete.enabled", havingValue="true")
+public class SoftDeletePurger implements SmartLifecycle {
+    private final PostRepository postRepository;
+    private final Duration retention;
+    private final Duration interval;
+    private final int batchSize;
+    private Disposable purging;
+
+    public SoftDeletePurger(PostRepository postRepository,
+                            @Value("${bms.posts.soft-delete.retention:PT24H}") Duration retention,
+                            @Value("${bms.posts.soft-delete.purge-interval:PT1M}") Duration interval,
+                            @Value("${bms.posts.soft-delete.purge-batch-size:500}") int batchSize){
+        this.postRepository=postRepository;
+        this.retention=retention;
+        this.interval=interval;
+        this.batchSize=batchSize;
+    }
+
+    /**
+     * Purges every expired tombstone, one batch per statement, and emits the number of rows removed.
+     */
+    public Mono<Long> purge(){
+        OffsetDateTime deletedBefore = OffsetDateTime.ofInstant(Instant.now().minus(retention), ZoneOffset.UTC);
+        return this.postRepository.purgeDeleted(deletedBefore, batchSize)
+                .expand(purged -> purged<batchSize ? Mono.empty() : this.postRepository.purgeDeleted(deletedBefore, batchSize))
+                .reduce(0L, Long::sum);
+    }
+
+    @Override
+    public void start() {
+        this.purging = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> purge()
+                        .filter(purged -> purged>0)
+                        .doOnNext(purged -> log.info("Purged {} soft-deleted posts",purged))
+                        .onErrorResume(ex -> {
+                            log.warn("Purging soft-deleted posts failed",ex);
+                            return Mono.empty();
+                        }), 0)
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if(this.purging!=null){
+            this.purging.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.purging!=null && !this.purging.isDisposed();
+    }
+}
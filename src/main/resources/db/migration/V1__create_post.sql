@@ -1,2 +1,3 @@
 create table if not exists Post(id bigint AUTO_INCREMENT primary key, title varchar(20) not null,content text,
-author varchar(10) not null,created_At TIMESTAMP WITH TIME ZONE not null,updated_At TIMESTAMP WITH TIME ZONE);
\ No newline at end of file
+author varchar(10) not null,created_At TIMESTAMP WITH TIME ZONE not null,updated_At TIMESTAMP WITH TIME ZONE,deleted_At TIMESTAMP WITH TIME ZONE,
+version bigint default 0 not null);
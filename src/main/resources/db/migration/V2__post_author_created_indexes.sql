@@ -0,0 +1,5 @@
+-- Serves an author's posts newest first; id makes the order total for keyset paging.
+-- Descending to match that order, since H2 does not scan an index backwards to satisfy ORDER BY.
+create index if not exists idx_post_author_created_id on Post(author, created_At desc, id desc);
+-- Serves creation-time ranges in ascending order.
+create index if not exists idx_post_created_id on Post(created_At, id);
@@ -0,0 +1,8 @@
+-- Committed post changes, written in the same transaction as the change itself. Every node tails
+-- this table by id to keep its caches, search index and subscribers in step with the other nodes.
+-- title, author and created_At are kept so a deleted post can still be described.
+create table if not exists post_changes(id bigint AUTO_INCREMENT primary key, post_id bigint not null,
+change_type varchar(8) not null, title varchar(20), author varchar(10), created_At TIMESTAMP WITH TIME ZONE,
+node_id varchar(64) not null, changed_At TIMESTAMP WITH TIME ZONE not null);
+-- Serves the retention purge.
+create index if not exists idx_post_changes_changed on post_changes(changed_At);
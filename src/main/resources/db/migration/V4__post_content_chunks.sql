@@ -0,0 +1,12 @@
+-- Post bodies, split into chunks of 8192 characters numbered from 0; only the last chunk of a post
+-- may be shorter. A slice of the body reads just the chunks it overlaps, and an append tops up the
+-- last chunk and inserts new ones, so neither loads or copies the rest of the body.
+create table if not exists post_content_chunk(post_id bigint not null, seq int not null, text varchar(8192) not null,
+primary key(post_id, seq), foreign key(post_id) references Post(id) on delete cascade);
+-- Total length of the body, null when the post has no content.
+alter table Post add column if not exists content_length int;
+update Post set content_length = length(content);
+insert into post_content_chunk(post_id, seq, text)
+select p.id, r.x, substring(p.content, r.x * 8192 + 1, 8192) from Post p
+join system_range(0, (select coalesce(max(content_length), 0) from Post) / 8192) r on r.x * 8192 < p.content_length;
+alter table Post drop column content;
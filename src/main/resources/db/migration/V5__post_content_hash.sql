@@ -0,0 +1,4 @@
+-- SHA-256 of the body (base64), so an update that leaves the content alone can skip rewriting its
+-- chunks. Null for posts without content and for bodies not written whole since this migration or
+-- since an append; the next full write of such a post rewrites its chunks and records the hash.
+alter table Post add column if not exists content_hash varchar(44);
@@ -8,5 +8,8 @@ import org.junit.platform.suite.api.Suite;
                 com.cg.bms.QueryTests.class,
                 com.cg.bms.MutationTests.class,
                 com.cg.bms.PostServiceImplTest.class,
-                com.cg.bms.PostGraphQLControllerIntTest.class})
+                com.cg.bms.PostGraphQLControllerIntTest.class,
+                com.cg.bms.JwtDecoderTest.class,
+                com.cg.bms.LoggingTest.class,
+                com.cg.bms.ReadWriteRoutingTest.class})
 public class BmsApplicationTestSuite {}
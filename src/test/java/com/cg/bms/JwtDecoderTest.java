@@ -0,0 +1,180 @@
+package com.cg.bms;
+
+import com.cg.bms.security.CachingReactiveJwtDecoder;
+import com.cg.bms.security.RefreshingJwkSource;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class JwtDecoderTest {
+    HttpServer jwksServer;
+    AtomicReference<JWKSet> published = new AtomicReference<>();
+    AtomicInteger jwksFetches = new AtomicInteger();
+    AtomicBoolean jwksDown = new AtomicBoolean();
+
+    @BeforeEach
+    void startJwksServer() throws Exception {
+        jwksServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jwksServer.createContext("/jwks.json", exchange -> {
+            jwksFetches.incrementAndGet();
+            if(jwksDown.get()){
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = published.get().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()){
+                out.write(body);
+            }
+        });
+        jwksServer.start();
+    }
+
+    @AfterEach
+    void stopJwksServer(){
+        jwksServer.stop(0);
+    }
+
+    @Test
+    void cachedTokenIsVerifiedOnce() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        String token = sign(key, Instant.now().plusSeconds(300));
+        AtomicInteger decodes = new AtomicInteger();
+        ReactiveJwtDecoder verifying = NimbusReactiveJwtDecoder.withPublicKey(key.toRSAPublicKey()).build();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(t -> {
+            decodes.incrementAndGet();
+            return verifying.decode(t);
+        }, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        StepVerifier.create(decoder.decode(token).map(Jwt::getSubject)).expectNext("alice").verifyComplete();
+        StepVerifier.create(decoder.decode(token).map(Jwt::getSubject)).expectNext("alice").verifyComplete();
+        Assertions.assertEquals(1, decodes.get());
+        Assertions.assertEquals(1, decoder.stats().hitCount());
+    }
+
+    @Test
+    void expiredTokenIsNotServedFromCache() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        String token = sign(key, Instant.now().minusSeconds(1));
+        AtomicInteger decodes = new AtomicInteger();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(t -> {
+            decodes.incrementAndGet();
+            return Mono.just(Jwt.withTokenValue(t).header("alg", "RS256").subject("alice")
+                    .expiresAt(Instant.now().minusSeconds(1)).build());
+        }, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        decoder.decode(token).block();
+        decoder.decode(token).block();
+        Assertions.assertEquals(2, decodes.get());
+    }
+
+    @Test
+    void failedDecodeIsNotCached() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        RSAKey other = new RSAKeyGenerator(2048).keyID("k1").generate();
+        String token = sign(other, Instant.now().plusSeconds(300));
+        AtomicInteger decodes = new AtomicInteger();
+        ReactiveJwtDecoder verifying = NimbusReactiveJwtDecoder.withPublicKey(key.toRSAPublicKey()).build();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(t -> {
+            decodes.incrementAndGet();
+            return verifying.decode(t);
+        }, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        StepVerifier.create(decoder.decode(token)).expectError(BadJwtException.class).verify();
+        StepVerifier.create(decoder.decode(token)).expectError(BadJwtException.class).verify();
+        Assertions.assertEquals(2, decodes.get());
+    }
+
+    @Test
+    void rotatedKeyIsPickedUpWithOneFetch() throws Exception {
+        RSAKey first = new RSAKeyGenerator(2048).keyID("k1").generate();
+        RSAKey rotated = new RSAKeyGenerator(2048).keyID("k2").generate();
+        published.set(new JWKSet(first.toPublicJWK()));
+        RefreshingJwkSource jwkSource = jwkSource(Duration.ZERO);
+        jwkSource.refresh().block();
+        ReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+
+        StepVerifier.create(decoder.decode(sign(first, Instant.now().plusSeconds(300))).map(Jwt::getSubject))
+                .expectNext("alice").verifyComplete();
+        Assertions.assertEquals(1, jwksFetches.get());
+
+        published.set(new JWKSet(List.of(first.toPublicJWK(), rotated.toPublicJWK())));
+        StepVerifier.create(decoder.decode(sign(rotated, Instant.now().plusSeconds(300))).map(Jwt::getSubject))
+                .expectNext("alice").verifyComplete();
+        Assertions.assertEquals(2, jwksFetches.get());
+    }
+
+    @Test
+    void unknownKeyIdDoesNotRefetchWithinMinimumInterval() throws Exception {
+        RSAKey known = new RSAKeyGenerator(2048).keyID("k1").generate();
+        RSAKey unknown = new RSAKeyGenerator(2048).keyID("forged").generate();
+        published.set(new JWKSet(known.toPublicJWK()));
+        RefreshingJwkSource jwkSource = jwkSource(Duration.ofMinutes(1));
+        jwkSource.refresh().block();
+        ReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+
+        String forged = sign(unknown, Instant.now().plusSeconds(300));
+        for(int i=0;i<5;i++){
+            StepVerifier.create(decoder.decode(forged)).expectError(BadJwtException.class).verify();
+        }
+        Assertions.assertEquals(1, jwksFetches.get());
+    }
+
+    @Test
+    void unknownKeyIdDoesNotRefetchWithinMinimumIntervalWhileEndpointIsDown() throws Exception {
+        RSAKey unknown = new RSAKeyGenerator(2048).keyID("forged").generate();
+        jwksDown.set(true);
+        RefreshingJwkSource jwkSource = jwkSource(Duration.ofMinutes(1));
+        ReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+
+        String forged = sign(unknown, Instant.now().plusSeconds(300));
+        for(int i=0;i<5;i++){
+            StepVerifier.create(decoder.decode(forged)).expectError().verify();
+        }
+        Assertions.assertEquals(1, jwksFetches.get());
+    }
+
+    private RefreshingJwkSource jwkSource(Duration minRefreshInterval){
+        return new RefreshingJwkSource(WebClient.create(),
+                "http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/jwks.json",
+                Duration.ofMinutes(5), minRefreshInterval);
+    }
+
+    private static String sign(RSAKey key, Instant expiresAt) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                new JWTClaimsSet.Builder().subject("alice").expirationTime(Date.from(expiresAt)).build());
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
@@ -0,0 +1,43 @@
+package com.cg.bms;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.core.spi.FilterReply;
+import com.cg.bms.logging.LogFields;
+import com.cg.bms.logging.RequestLogSamplingFilter;
+import com.cg.bms.model.Post;
+import com.cg.bms.model.PostInput;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MarkerFactory;
+
+class LoggingTest {
+    @Test
+    void toString_renders_content_length_instead_of_content(){
+        String content = "x".repeat(100000);
+        String post = Post.builder().id(1L).title("title").author("author").content(content).build().toString();
+        String postInput = new PostInput("title", content, "author").toString();
+        Assertions.assertFalse(post.contains("xxx"));
+        Assertions.assertTrue(post.contains("contentLength=100000"));
+        Assertions.assertEquals("PostInput(title=title, author=author, contentLength=100000)", postInput);
+    }
+
+    @Test
+    void truncated_cuts_long_values(){
+        Assertions.assertEquals("short", LogFields.truncated("short").toString());
+        Assertions.assertEquals("y".repeat(LogFields.MAX_VALUE_LENGTH)+"...(500 chars)", LogFields.truncated("y".repeat(500)).toString());
+    }
+
+    @Test
+    void request_logs_are_capped_per_second_but_warnings_and_unmarked_logs_are_not(){
+        RequestLogSamplingFilter filter = new RequestLogSamplingFilter();
+        filter.setPermitsPerSecond(3);
+        for(int i=0;i<3;i++){
+            Assertions.assertEquals(FilterReply.NEUTRAL, filter.decide(RequestLogSamplingFilter.REQUEST, null, Level.INFO, "m", null, null));
+        }
+        Assertions.assertEquals(FilterReply.DENY, filter.decide(RequestLogSamplingFilter.REQUEST, null, Level.INFO, "m", null, null));
+        Assertions.assertEquals(FilterReply.NEUTRAL, filter.decide(RequestLogSamplingFilter.REQUEST, null, Level.WARN, "m", null, null));
+        Assertions.assertEquals(FilterReply.NEUTRAL, filter.decide(null, null, Level.INFO, "m", null, null));
+        Assertions.assertEquals(FilterReply.NEUTRAL, filter.decide(MarkerFactory.getMarker("OTHER"), null, Level.INFO, "m", null, null));
+        Assertions.assertEquals(1, filter.getDropped());
+    }
+}
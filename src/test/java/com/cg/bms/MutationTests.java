@@ -4,6 +4,7 @@ import com.cg.bms.model.Post;
 import com.cg.bms.repository.PostRepository;
 import graphql.ErrorType;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
@@ -13,6 +14,7 @@ import org.springframework.dao.DuplicateKeyException;
 import org.springframework.graphql.ResponseError;
 import org.springframework.graphql.test.tester.GraphQlTester;
 import org.springframework.security.test.context.support.WithMockUser;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.time.OffsetDateTime;
 import java.util.Arrays;
@@ -21,6 +23,8 @@ import java.util.Map;
 import java.util.Objects;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest(webEnvironment=SpringBootTest.WebEnvironment.MOCK)
@@ -40,6 +44,11 @@ class MutationTests {
     private final Map<String,Object> emptyAuthorPostInputVariable = Map.of("title","inputTitle",
             "author","",
             "content","inputContent");
+    @BeforeEach
+    void stubContentChunks(){
+        when(postRepository.insertContent(anyCollection())).thenReturn(Mono.empty());
+        when(postRepository.findAllById(anyCollection(),any())).thenReturn(Flux.empty());
+    }
     @Test
     void addPost_successfully(){
         when(postRepository.save(any(Post.class))).thenReturn(Mono.just(
@@ -107,15 +116,7 @@ class MutationTests {
     }
     @Test
     void updatePost_works_successfully(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.just(
-                Post.builder().id(2L)
-                        .title("findTitle")
-                        .author("findAuth")
-                        .content("findContent")
-                        .createdAt(OffsetDateTime.now())
-                        .build()
-        ));
-        when(postRepository.save(any(Post.class))).thenReturn(Mono.just(
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.just(
                 Post.builder().id(1L)
                         .title("title")
                         .author("author")
@@ -139,7 +140,7 @@ class MutationTests {
     }
     @Test
     void updatePost_throws_error_if_no_post_found(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.empty());
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.empty());
         graphQlTester.documentName("mutation/updatePost")
                 .variable("id",6L)
                 .variable("postInput",postInputVariable)
@@ -191,7 +192,7 @@ class MutationTests {
     }
     @Test
     void deletePost_works_successfully(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.just(
+        when(postRepository.deleteAndReturnById(any(Long.class))).thenReturn(Mono.just(
                 Post.builder().id(1L)
                         .title("deleteTitle")
                         .author("delAuth")
@@ -200,7 +201,6 @@ class MutationTests {
                         .updatedAt(OffsetDateTime.now())
                         .build()
         ));
-        when(postRepository.deleteById(any(Long.class))).thenReturn(Mono.empty());
         graphQlTester.documentName("mutation/deletePost")
                 .variable("id",4L)
                 .execute()
@@ -210,7 +210,7 @@ class MutationTests {
     }
     @Test
     void deletePost_throws_error_if_no_post_found(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.empty());
+        when(postRepository.deleteAndReturnById(any(Long.class))).thenReturn(Mono.empty());
         graphQlTester.documentName("mutation/deletePost")
                 .variable("id",4L)
                 .execute()
@@ -225,6 +225,31 @@ class MutationTests {
                 .errors()
                 .satisfy(responseErrors -> emptyInputIdAssertions(responseErrors,"deletePost"));
     }
+    @Test
+    void addPosts_throws_validation_error_if_any_input_title_is_empty(){
+        graphQlTester.documentName("mutation/addPosts")
+                .variable("postInputs",List.of(postInputVariable,emptyTitlePostInputVariable))
+                .execute()
+                .errors()
+                .satisfy(responseErrors -> {
+                    Assertions.assertEquals(1,responseErrors.size());
+                    Assertions.assertEquals(ErrorType.ValidationError,responseErrors.get(0).getErrorType());
+                    Assertions.assertTrue(Objects.requireNonNull(responseErrors.get(0).getMessage())
+                            .contains("addPosts.postInputs[1].title: title is required"));
+                });
+        verify(postRepository,never()).insertAll(anyList());
+    }
+    @Test
+    void deletePosts_throws_validation_error_for_empty_ids(){
+        graphQlTester.documentName("mutation/deletePosts")
+                .variable("ids",List.of())
+                .execute()
+                .errors()
+                .satisfy(responseErrors -> {
+                    Assertions.assertEquals(1,responseErrors.size());
+                    Assertions.assertEquals(ErrorType.ValidationError,responseErrors.get(0).getErrorType());
+                });
+    }
     private void emptyTitlePostInputAssertions(List<ResponseError> responseErrors,String operationName){
             Assertions.assertEquals(1,responseErrors.size());
             Assertions.assertEquals(ErrorType.ValidationError,responseErrors.get(0).getErrorType());
@@ -1,20 +1,56 @@
 package com.cg.bms;
 
+import com.cg.bms.config.SchemaMigrator;
+import com.cg.bms.event.PostChangeLog;
+import com.cg.bms.event.PostEvent;
+import com.cg.bms.event.PostEventHub;
+import com.cg.bms.exception.PostNotFoundException;
 import com.cg.bms.model.Post;
+import com.cg.bms.model.PostConnection;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.model.PostUpdateInput;
+import com.cg.bms.repository.PostRepository;
 import com.cg.bms.service.PostServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.repository.Query;
+import graphql.ErrorType;
 import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureGraphQlTester
@@ -25,11 +61,27 @@ class PostGraphQLControllerIntTest {
     GraphQlTester graphQlTester;
     @Autowired
     PostServiceImpl postService;
+    @Autowired
+    PostRepository postRepository;
+    @Autowired
+    DatabaseClient databaseClient;
+    @Autowired
+    ConnectionFactory connectionFactory;
+    @Autowired
+    ConnectionPool replicaConnectionPool;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    PostChangeLog postChangeLog;
+    @Autowired
+    PostEventHub postEventHub;
+    @Autowired
+    TransactionalOperator transactionalOperator;
     @ParameterizedTest
     @ValueSource(strings={"Test1","Test2","Test3","Test4","Test5","Test6","Test7","Test8"})
     @Order(1)
     void shouldAddNewPost(String input){
-    long currentPostCount=postService.getAllPosts().toStream().count();
+    long currentPostCount=postService.getAllPosts(PostProjection.FULL).toStream().count();
     System.out.println("Number of posts before addPost test execution - "+currentPostCount);
     Map<String,Object> postInputVariable = Map.of(
                     "title","title"+input,
@@ -48,7 +100,7 @@ class PostGraphQLControllerIntTest {
                 assertEquals("auth"+input,post.getAuthor());
             });
 
-    assertEquals(currentPostCount+1,postService.getAllPosts().toStream().count());
+    assertEquals(currentPostCount+1,postService.getAllPosts(PostProjection.FULL).toStream().count());
     }
     @Test
     @Order(2)
@@ -98,7 +150,7 @@ class PostGraphQLControllerIntTest {
     @Test
     @Order(5)
     void testDeletePostShouldDeletePostSuccessfully(){
-    long currentPostCount = postService.getAllPosts().toStream().count();
+    long currentPostCount = postService.getAllPosts(PostProjection.FULL).toStream().count();
     System.out.println("Number of total posts before deletePost test execution - "+currentPostCount);
     graphQlTester.documentName("mutation/deletePost")
             .variable("id",1L)
@@ -106,7 +158,7 @@ class PostGraphQLControllerIntTest {
             .path("deletePost")
             .entity(Post.class)
             .satisfies(post->assertEquals(1L,post.getId()));
-    assertEquals(currentPostCount-1,postService.getAllPosts().toStream().count());
+    assertEquals(currentPostCount-1,postService.getAllPosts(PostProjection.FULL).toStream().count());
     }
     @Test
     @Order(6)
@@ -128,4 +180,449 @@ class PostGraphQLControllerIntTest {
                    assertEquals(2,postData.getNumber());
                 });
     }
+    @Test
+    @Order(7)
+    void testFindPageWithTotalCountShouldReturnPageAndTotalInOneQuery(){
+        Page<Post> page = postRepository.findPageWithTotalCount(PageRequest.of(1,2,Sort.by("id")),PostProjection.FULL).block();
+        assertNotNull(page);
+        assertEquals(2,page.getContent().size());
+        assertEquals(4,page.getContent().get(0).getId());
+        assertEquals(5,page.getContent().get(1).getId());
+        assertEquals(7,page.getTotalElements());
+        assertEquals(0,postRepository.findPageWithTotalCount(PageRequest.of(10,2,Sort.by("id")),PostProjection.SUMMARY).block().getContent().size());
+        assertEquals(7,postRepository.findPageWithTotalCount(PageRequest.of(10,2,Sort.by("id")),PostProjection.SUMMARY).block().getTotalElements());
+    }
+    @Test
+    @Order(8)
+    void testPostsConnectionShouldPageForwardAndBackwardByCursor(){
+        PostConnection firstPage = graphQlTester.documentName("query/postsConnection")
+                .variable("first",3)
+                .execute()
+                .path("postsConnection")
+                .entity(PostConnection.class)
+                .get();
+        assertEquals(3,firstPage.getEdges().size());
+        assertEquals(2,firstPage.getEdges().get(0).getNode().getId());
+        assertEquals(4,firstPage.getEdges().get(2).getNode().getId());
+        assertTrue(firstPage.getPageInfo().isHasNextPage());
+        PostConnection secondPage = graphQlTester.documentName("query/postsConnection")
+                .variable("first",3)
+                .variable("after",firstPage.getPageInfo().getEndCursor())
+                .execute()
+                .path("postsConnection")
+                .entity(PostConnection.class)
+                .get();
+        assertEquals(5,secondPage.getEdges().get(0).getNode().getId());
+        assertEquals(7,secondPage.getEdges().get(2).getNode().getId());
+        assertTrue(secondPage.getPageInfo().isHasPreviousPage());
+        graphQlTester.documentName("query/postsConnection")
+                .variable("last",2)
+                .variable("before",secondPage.getPageInfo().getStartCursor())
+                .execute()
+                .path("postsConnection")
+                .entity(PostConnection.class)
+                .satisfies(previousPage->{
+                    assertEquals(2,previousPage.getEdges().size());
+                    assertEquals(3,previousPage.getEdges().get(0).getNode().getId());
+                    assertEquals(4,previousPage.getEdges().get(1).getNode().getId());
+                    assertTrue(previousPage.getPageInfo().isHasPreviousPage());
+                    assertTrue(previousPage.getPageInfo().isHasNextPage());
+                });
+    }
+    @Test
+    @Order(9)
+    void testSummaryProjectionShouldNotLoadContent(){
+        graphQlTester.document("query{getAllPosts{id,title}}")
+                .execute()
+                .path("getAllPosts[*].id")
+                .entityList(Long.class)
+                .hasSize(7);
+        List<Post> posts = postRepository.findAllBy(PageRequest.of(0,3,Sort.by("id")),PostProjection.SUMMARY).collectList().block();
+        assertNotNull(posts);
+        assertEquals(3,posts.size());
+        posts.forEach(post->{
+            assertNotNull(post.getTitle());
+            assertNull(post.getContent());
+        });
+        Page<Post> page = postRepository.findPageWithTotalCount(PageRequest.of(0,2,Sort.by("id")),PostProjection.SUMMARY).block();
+        assertNotNull(page);
+        assertNull(page.getContent().get(0).getContent());
+    }
+    @Test
+    @Order(10)
+    void testAppendPostContentShouldExtendContentAndExposeSlices(){
+        graphQlTester.documentName("mutation/appendPostContent")
+                .variable("id",2L)
+                .variable("chunk","-appended")
+                .execute()
+                .path("appendPostContent.contentLength")
+                .entity(Integer.class)
+                .isEqualTo("contentTest2-appended".length());
+        Post post = postRepository.findById(2L,PostProjection.SUMMARY).block();
+        assertNotNull(post);
+        assertNull(post.getContent());
+        PostContentSlice inside = new PostContentSlice(2L,7,9);
+        PostContentSlice pastEnd = new PostContentSlice(2L,500,9);
+        assertEquals(Map.of(inside,"Test2-app",pastEnd,""),postRepository.findContentSlices(List.of(inside,pastEnd)).block());
+        assertEquals(Map.of(2L,21),postRepository.findContentLengths(List.of(2L)).block());
+    }
+    @Test
+    @Order(11)
+    void testBatchMutationsShouldWriteAllPostsAndReturnPerItemResults(){
+        long currentPostCount = postService.getAllPosts(PostProjection.FULL).toStream().count();
+        List<Post> added = graphQlTester.documentName("mutation/addPosts")
+                .variable("postInputs",List.of(
+                        Map.of("title","batchTitle1","content","batchContent1","author","batchAuth1"),
+                        Map.of("title","batchTitle2","author","batchAuth2"),
+                        Map.of("title","batchTitle3","content","batchContent3","author","batchAuth3")))
+                .execute()
+                .path("addPosts")
+                .entityList(Post.class)
+                .hasSize(3)
+                .get();
+        assertEquals("batchTitle1",added.get(0).getTitle());
+        assertNull(added.get(1).getContent());
+        assertTrue(added.get(0).getId()<added.get(1).getId() && added.get(1).getId()<added.get(2).getId());
+        assertEquals(currentPostCount+3,postService.getAllPosts(PostProjection.FULL).toStream().count());
+        graphQlTester.documentName("mutation/updatePosts")
+                .variable("postUpdates",List.of(
+                        Map.of("id",added.get(1).getId(),"postInput",Map.of("title","batchUpd2","content","upd","author","batchAuth2")),
+                        Map.of("id",999L,"postInput",Map.of("title","missing","author","missing"))))
+                .execute()
+                .path("updatePosts[0].title").entity(String.class).isEqualTo("batchUpd2")
+                .path("updatePosts[0].updatedAt").hasValue()
+                .path("updatePosts[1]").valueIsNull();
+        graphQlTester.documentName("mutation/deletePosts")
+                .variable("ids",List.of(added.get(0).getId(),999L,added.get(2).getId()))
+                .execute()
+                .path("deletePosts[0].title").entity(String.class).isEqualTo("batchTitle1")
+                .path("deletePosts[1]").valueIsNull()
+                .path("deletePosts[2].title").entity(String.class).isEqualTo("batchTitle3");
+        assertEquals(currentPostCount+1,postService.getAllPosts(PostProjection.FULL).toStream().count());
+    }
+    @Test
+    @Order(12)
+    void testSoftDeletedPostsShouldBeHiddenAndPurged(){
+        long liveCount = postRepository.count().block();
+        Post tombstoned = postRepository.softDeleteAndReturnById(3L,OffsetDateTime.now()).block();
+        assertNotNull(tombstoned);
+        assertEquals(3L,tombstoned.getId());
+        assertNull(postRepository.findById(3L).block());
+        assertEquals(liveCount-1,postRepository.count().block());
+        assertNull(postRepository.softDeleteAndReturnById(3L,OffsetDateTime.now()).block());
+        assertNull(postRepository.deleteAndReturnById(3L).block());
+        graphQlTester.documentName("query/postsConnection")
+                .variable("first",100)
+                .execute()
+                .path("postsConnection.edges[*].node.id")
+                .entityList(Long.class)
+                .doesNotContain(3L);
+        assertEquals(1,postRepository.purgeDeleted(OffsetDateTime.now().plusMinutes(1),10).block());
+        assertEquals(0,postRepository.purgeDeleted(OffsetDateTime.now().plusMinutes(1),10).block());
+    }
+    @Test
+    @Order(13)
+    void testUpdatePostShouldRejectStaleVersion(){
+        Map<String,Object> postInputVariable = Map.of(
+                "title","VersionedTitle",
+                "author","VerAuthor",
+                "content","VersionedContent"
+        );
+        long version = postRepository.findById(2L).block().getVersion();
+        graphQlTester.documentName("mutation/updatePost")
+                .variable("id",2L)
+                .variable("postInput",postInputVariable)
+                .variable("version",version)
+                .execute()
+                .path("updatePost.version")
+                .entity(Long.class)
+                .isEqualTo(version+1);
+        graphQlTester.documentName("mutation/updatePost")
+                .variable("id",2L)
+                .variable("postInput",postInputVariable)
+                .variable("version",version)
+                .execute()
+                .errors()
+                .satisfy(errors->{
+                    assertEquals(1,errors.size());
+                    assertEquals("Post id - 2 was modified since version "+version,errors.get(0).getMessage());
+                });
+    }
+    @Test
+    @Order(14)
+    void testAuthorAndDateFindersShouldUseIndexes() throws NoSuchMethodException {
+        OffsetDateTime from = OffsetDateTime.now().minusDays(1);
+        OffsetDateTime to = OffsetDateTime.now().plusDays(1);
+        String byAuthorPlan = explain(PostRepository.class.getMethod("findByAuthor",String.class,int.class),
+                Map.of("author","authTest4","limit",10));
+        assertTrue(byAuthorPlan.contains("IDX_POST_AUTHOR_CREATED_ID"),byAuthorPlan);
+        assertTrue(byAuthorPlan.contains("/* index sorted */"),byAuthorPlan);
+        String byCreatedPlan = explain(PostRepository.class.getMethod("findByCreatedAtRange",OffsetDateTime.class,OffsetDateTime.class,int.class),
+                Map.of("from",from,"to",to,"limit",10));
+        assertTrue(byCreatedPlan.contains("IDX_POST_CREATED_ID"),byCreatedPlan);
+        assertTrue(byCreatedPlan.contains("/* index sorted */"),byCreatedPlan);
+        assertEquals(List.of("authTest4"),postRepository.findByAuthor("authTest4",10).map(Post::getAuthor).collectList().block());
+        List<OffsetDateTime> created = postRepository.findByCreatedAtRange(from,to,100).map(Post::getCreatedAt).collectList().block();
+        assertFalse(created.isEmpty());
+        assertEquals(created.stream().sorted().toList(),created);
+    }
+    @Test
+    @Order(15)
+    void testSchemaMigrationsShouldBeRecordedAndAppliedOnce(){
+        new SchemaMigrator("classpath:db/migration/V*__*.sql").populate(connectionFactory).block();
+        assertEquals(List.of(1,2,3,4,5),databaseClient.sql("SELECT version FROM schema_history ORDER BY version")
+                .map(row -> row.get(0,Integer.class)).all().collectList().block());
+    }
+    @Test
+    @Order(16)
+    void testSearchPostsShouldFilterAndSortInDatabase(){
+        graphQlTester.documentName("query/searchPosts")
+                .variable("filter",Map.of("authorIn",List.of("authTest5","authTest7","authTest8"),"titlePrefix","titleTest"))
+                .variable("sort",List.of(Map.of("field","CREATED_AT","direction","DESC")))
+                .execute()
+                .path("searchPosts[*].author")
+                .entityList(String.class)
+                .containsExactly("authTest8","authTest7","authTest5");
+        graphQlTester.documentName("query/searchPosts")
+                .variable("filter",Map.of(
+                        "updatedAtIsNull",true,
+                        "or",List.of(Map.of("authorIn",List.of("authTest4")),Map.of("titlePrefix","titleTest6"),
+                                Map.of("and",List.of(Map.of("titlePrefix","titleTest7"),Map.of("authorIn",List.of("nobody")))))))
+                .variable("sort",List.of(Map.of("field","TITLE","direction","DESC")))
+                .execute()
+                .path("searchPosts[*].title")
+                .entityList(String.class)
+                .containsExactly("titleTest6","titleTest4");
+        graphQlTester.documentName("query/searchPosts")
+                .variable("filter",Map.of("titlePrefix","title%"))
+                .execute()
+                .path("searchPosts")
+                .entityList(Post.class)
+                .hasSize(0);
+        graphQlTester.documentName("query/searchPosts")
+                .variable("first",2)
+                .execute()
+                .path("searchPosts[*].id")
+                .entityList(Long.class)
+                .hasSize(2);
+    }
+    @Test
+    @Order(17)
+    void testSearchPostsByTextShouldFindIndexedPostsAfterReindex(){
+        long liveCount = postRepository.count().block();
+        graphQlTester.documentName("mutation/reindexPosts")
+                .execute()
+                .path("reindexPosts")
+                .entity(Long.class)
+                .isEqualTo(liveCount);
+        graphQlTester.documentName("query/searchPostsByText")
+                .variable("query","contentTest6 OR titleTest7")
+                .variable("first",1)
+                .execute()
+                .path("searchPostsByText.edges[*].node.id")
+                .entityList(Long.class)
+                .hasSize(1)
+                .path("searchPostsByText.pageInfo.hasNextPage")
+                .entity(Boolean.class)
+                .isEqualTo(true);
+        graphQlTester.documentName("query/searchPostsByText")
+                .variable("query","nosuchword")
+                .execute()
+                .path("searchPostsByText.edges")
+                .entityList(Object.class)
+                .hasSize(0);
+    }
+    @Test
+    @Order(18)
+    void testOperationsShouldBeTimedByPhaseServiceAndRepository(){
+        graphQlTester.document("query PostTitles{getAllPosts{id,title}}")
+                .execute()
+                .path("getAllPosts")
+                .entityList(Post.class)
+                .hasSizeGreaterThan(0);
+        assertEquals(1, meterRegistry.get("graphql.phase").tag("phase","execute").tag("operation","PostTitles").timer().count());
+        assertTrue(meterRegistry.get("bms.service").tag("class","PostServiceImpl").tag("method","getAllPosts")
+                .tag("outcome","success").timer().count()>0);
+        assertTrue(meterRegistry.get("spring.data.repository.invocations").tag("repository","PostRepository").timers().size()>0);
+        assertNotNull(meterRegistry.find("r2dbc.pool.acquired").gauge());
+    }
+    @Test
+    @Order(19)
+    void testSaturatedPoolShouldFailFastWithRetryableError(){
+        ConnectionPool pool = replicaConnectionPool;
+        int maxSize = pool.getMetrics().orElseThrow().getMaxAllocatedSize();
+        List<Connection> held = Flux.range(0,maxSize).flatMap(i->pool.create()).collectList().block();
+        try{
+            graphQlTester.document("{getAllPosts{id}}")
+                    .execute()
+                    .errors()
+                    .satisfy(errors->{
+                        assertEquals(1,errors.size());
+                        assertEquals(ErrorType.ExecutionAborted,errors.get(0).getErrorType());
+                        assertEquals(true,errors.get(0).getExtensions().get("retryable"));
+                    });
+        }
+        finally{
+            Flux.fromIterable(held).flatMap(Connection::close).blockLast();
+        }
+        graphQlTester.document("{getAllPosts{id}}")
+                .execute()
+                .path("getAllPosts")
+                .entityList(Post.class)
+                .hasSizeGreaterThan(0);
+    }
+    @Test
+    @Order(20)
+    void testSubscribersShouldReceiveCommittedChanges(){
+        Flux<Post> added = graphQlTester.documentName("subscription/postAdded").executeSubscription().toFlux()
+                .map(response -> response.path("postAdded").entity(Post.class).get());
+        List<Post> batch = new ArrayList<>();
+        StepVerifier.create(added.take(2))
+                .then(() -> {
+                    awaitSubscribers(1);
+                    batch.addAll(postService.addPosts(List.of(new PostInput("Subscribed1","content","author"),
+                            new PostInput("Subscribed2","content","author"))).block());
+                })
+                .assertNext(post -> assertEquals("Subscribed1",post.getTitle()))
+                .assertNext(post -> assertEquals("Subscribed2",post.getTitle()))
+                .verifyComplete();
+        Flux<Post> updated = graphQlTester.documentName("subscription/postUpdated").variable("id",batch.get(0).getId())
+                .executeSubscription().toFlux()
+                .map(response -> response.path("postUpdated").entity(Post.class).get());
+        StepVerifier.create(updated.take(1))
+                .then(() -> {
+                    awaitSubscribers(1);
+                    postService.updatePost(batch.get(1).getId(), new PostInput("Other","content","author"), null).block();
+                    postService.updatePost(batch.get(0).getId(), new PostInput("Renamed","content","author"), null).block();
+                })
+                .assertNext(post -> {
+                    assertEquals(batch.get(0).getId(),post.getId());
+                    assertEquals("Renamed",post.getTitle());
+                })
+                .verifyComplete();
+        Flux<Post> deleted = graphQlTester.documentName("subscription/postDeleted").executeSubscription().toFlux()
+                .map(response -> response.path("postDeleted").entity(Post.class).get());
+        StepVerifier.create(deleted.take(1))
+                .then(() -> {
+                    awaitSubscribers(1);
+                    postService.deletePost(batch.get(1).getId(),PostProjection.SUMMARY).block();
+                })
+                .assertNext(post -> assertEquals(batch.get(1).getId(),post.getId()))
+                .verifyComplete();
+    }
+    @Test
+    @Order(21)
+    void testSlowSubscriberShouldDropOldestEvents(){
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PostEventHub hub = new PostEventHub(2, registry);
+        Flux<Long> ids = hub.subscribe(PostEvent.Type.ADDED, post -> true).map(Post::getId);
+        StepVerifier.create(ids, 0)
+                .then(() -> hub.added(LongStream.rangeClosed(1,5).mapToObj(id -> Post.builder().id(id).build()).toList()).block())
+                .thenRequest(2)
+                .expectNext(4L,5L)
+                .thenCancel()
+                .verify();
+        assertEquals(3, registry.get("bms.subscriptions.dropped").counter().count());
+    }
+    @Test
+    @Order(22)
+    void testChangesFromOtherNodesShouldInvalidateCacheAndReachSubscribers(){
+        Post post = postService.addPost(new PostInput("Outboxed","content","author")).block();
+        assertEquals(1, databaseClient.sql("SELECT COUNT(*) FROM post_changes WHERE post_id = :id AND change_type = 'ADDED' AND node_id = :node")
+                .bind("id",post.getId()).bind("node",postChangeLog.getNodeId())
+                .map(row -> row.get(0,Long.class)).one().block());
+        assertEquals("Outboxed", postService.getPostById(post.getId()).block().getTitle());
+        Flux<Post> updated = postEventHub.subscribe(PostEvent.Type.UPDATED, changed -> post.getId().equals(changed.getId()));
+        StepVerifier.create(updated.take(1))
+                .then(() -> databaseClient.sql("UPDATE Post SET title = 'Remote', version = version + 1 WHERE id = :id").bind("id",post.getId())
+                        .then()
+                        .then(databaseClient.sql("INSERT INTO post_changes(post_id, change_type, node_id, changed_At) VALUES (:id, 'UPDATED', 'other-node', :at)")
+                                .bind("id",post.getId()).bind("at",OffsetDateTime.now()).then())
+                        .block())
+                .assertNext(changed -> {
+                    assertEquals("Remote",changed.getTitle());
+                    assertEquals(7,changed.getContentLength());
+                    assertNull(changed.getContent());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+        assertEquals("Remote", postService.getPostById(post.getId()).block().getTitle());
+        assertEquals(1, postService.searchPostsByText("Remote",10,null).block().getEdges().size());
+    }
+    @Test
+    @Order(23)
+    void testContentShouldBeStoredInChunksThatSlicesReadSelectively(){
+        String written = "a".repeat(8000);
+        String appended = "b".repeat(500)+"c".repeat(10000);
+        String content = written+appended;
+        Post post = postService.addPost(new PostInput("Chunked",written,"author")).block();
+        postService.appendPostContent(post.getId(),appended.substring(0,500),PostProjection.SUMMARY).block();
+        postService.appendPostContent(post.getId(),appended.substring(500),PostProjection.SUMMARY).block();
+        assertEquals(List.of(8192L,8192L,2116L),databaseClient.sql("SELECT LENGTH(text) FROM post_content_chunk WHERE post_id = :id ORDER BY seq")
+                .bind("id",post.getId()).map(row -> row.get(0,Long.class)).all().collectList().block());
+        assertEquals(content,postRepository.findById(post.getId(),PostProjection.FULL).block().getContent());
+        assertEquals(content.length(),postRepository.findById(post.getId(),PostProjection.SUMMARY).block().getContentLength());
+        PostContentSlice acrossChunks = new PostContentSlice(post.getId(),8190,4);
+        PostContentSlice pastEnd = new PostContentSlice(post.getId(),18000,1000);
+        assertEquals(Map.of(acrossChunks,content.substring(8190,8194),pastEnd,content.substring(18000)),
+                postRepository.findContentSlices(List.of(acrossChunks,pastEnd)).block());
+        assertEquals(content.substring(0,8200),postRepository.findAllWithContentPrefix(8200)
+                .filter(prefixed -> prefixed.getId().equals(post.getId())).blockLast().getContent());
+        assertEquals(content.substring(0,100),postRepository.findAllByIdWithContentPrefix(List.of(post.getId()),100)
+                .single().block().getContent());
+        assertEquals(content,postService.deletePost(post.getId(),PostProjection.FULL).block().getContent());
+        assertEquals(0,databaseClient.sql("SELECT COUNT(*) FROM post_content_chunk WHERE post_id = :id")
+                .bind("id",post.getId()).map(row -> row.get(0,Long.class)).one().block());
+    }
+    @Test
+    @Order(24)
+    void testUpdateShouldRewriteContentChunksOnlyWhenContentChanged(){
+        String content = "a".repeat(9000);
+        Post post = postService.addPost(new PostInput("Unchanged",content,"author")).block();
+        // Marks the stored chunk, so a rewrite of the chunks would be visible.
+        databaseClient.sql("UPDATE post_content_chunk SET text = 'marker' WHERE post_id = :id AND seq = 1")
+                .bind("id",post.getId()).fetch().rowsUpdated().block();
+        Post renamed = postService.updatePost(post.getId(),new PostInput("Renamed",content,"author"),post.getVersion()).block();
+        assertEquals("Renamed",renamed.getTitle());
+        assertEquals(post.getVersion()+1,renamed.getVersion());
+        assertEquals(content,renamed.getContent());
+        postService.updatePosts(List.of(new PostUpdateInput(post.getId(),new PostInput("Renamed again",content,"author")))).block();
+        assertEquals("marker",chunkText(post.getId(),1));
+        postService.updatePost(post.getId(),new PostInput("Renamed",content+"b","author"),null).block();
+        assertEquals("a".repeat(808)+"b",chunkText(post.getId(),1));
+        postService.updatePosts(List.of(new PostUpdateInput(post.getId(),new PostInput("Renamed",content,"author")))).block();
+        assertEquals(content,postRepository.findById(post.getId(),PostProjection.FULL).block().getContent());
+    }
+    @Test
+    @Order(25)
+    void testRolledBackMutationShouldLeaveCacheAndSearchIndexUntouched(){
+        AtomicReference<Post> phantom = new AtomicReference<>();
+        StepVerifier.create(transactionalOperator.transactional(postService.addPost(new PostInput("Phantomtitle","content","author"))
+                        .doOnNext(phantom::set)
+                        .then(Mono.error(new IllegalStateException("rolled back")))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertNotNull(phantom.get());
+        assertTrue(postService.searchPostsByText("Phantomtitle",10,null).block().getEdges().isEmpty());
+        StepVerifier.create(postService.getPostById(phantom.get().getId()))
+                .expectError(PostNotFoundException.class)
+                .verify();
+    }
+    private String chunkText(Long postId, int seq){
+        return databaseClient.sql("SELECT text FROM post_content_chunk WHERE post_id = :id AND seq = :seq")
+                .bind("id",postId).bind("seq",seq).map(row -> row.get(0,String.class)).one().block();
+    }
+    private void awaitSubscribers(int count){
+        long deadline = System.nanoTime()+Duration.ofSeconds(5).toNanos();
+        while(meterRegistry.get("bms.subscriptions.active").gauge().value()<count && System.nanoTime()<deadline){
+            Thread.onSpinWait();
+        }
+    }
+    private String explain(Method finder, Map<String,Object> parameters){
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("EXPLAIN "+finder.getAnnotation(Query.class).value());
+        for(Map.Entry<String,Object> parameter : parameters.entrySet()){
+            spec = spec.bind(parameter.getKey(),parameter.getValue());
+        }
+        return spec.map(row -> row.get(0,String.class)).one().block();
+    }
 }
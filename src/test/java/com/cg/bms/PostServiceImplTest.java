@@ -1,53 +1,115 @@
 package com.cg.bms;
 
+import com.cg.bms.cache.PostCache;
+import com.cg.bms.event.PostChangeLog;
+import com.cg.bms.event.PostDataVersion;
+import com.cg.bms.event.PostEventHub;
 import com.cg.bms.exception.DuplicatePostException;
+import com.cg.bms.exception.InvalidPaginationException;
+import com.cg.bms.exception.InvalidSearchQueryException;
+import com.cg.bms.exception.PostContentTooLargeException;
 import com.cg.bms.exception.PostNotFoundException;
+import com.cg.bms.exception.PostVersionConflictException;
 import com.cg.bms.model.Post;
+import com.cg.bms.model.PostConnection;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
 import com.cg.bms.model.PostInput;
+import com.cg.bms.model.PostFilter;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.model.PostSort;
+import com.cg.bms.model.PostSortField;
+import com.cg.bms.repository.PostChangeRepository;
 import com.cg.bms.repository.PostRepository;
+import com.cg.bms.search.PostSearchIndex;
 import com.cg.bms.service.PostServiceImpl;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.test.StepVerifier;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.Set;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
 class PostServiceImplTest {
     @Mock
     PostRepository postRepository;
+    @Spy
+    PostCache postCache = new PostCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    @Spy
+    PostSearchIndex postSearchIndex = new PostSearchIndex(1000);
+    @Spy
+    PostChangeLog postChangeLog = new PostChangeLog(Mockito.mock(PostChangeRepository.class, invocation -> Flux.empty()),
+            new PostEventHub(16, new SimpleMeterRegistry()), new PostDataVersion(), "test");
     @InjectMocks
     PostServiceImpl postService;
+    @BeforeEach
+    void writeContentChunks(){
+        when(postRepository.insertContent(anyCollection())).thenReturn(Mono.empty());
+    }
     @Test
     void getAllPosts_should_return_all_posts(){
         List<Post> postList = new ArrayList<>();
         postList.add(new Post(1L,"title1","content1","author1", OffsetDateTime.now(),null));
         postList.add(new Post(2L,"title2","content2","author2",OffsetDateTime.now(),OffsetDateTime.now()));
-        when(postRepository.findAll()).thenReturn(Flux.just(postList.get(0),postList.get(1)));
-        List<Post> response = postService.getAllPosts().collectList().flatMap(Mono::just).block();
+        when(postRepository.findAllBy(any(PageRequest.class),any(PostProjection.class))).thenReturn(Flux.just(postList.get(0),postList.get(1)));
+        List<Post> response = postService.getAllPosts(PostProjection.FULL).collectList().flatMap(Mono::just).block();
         Assertions.assertEquals(response,postList);
     }
     @Test
-    void getPosts_should_return_post_data_for_corresponding_page() throws ExecutionException, InterruptedException {
+    void getAllPosts_should_cap_result_at_configured_maximum(){
+        ReflectionTestUtils.setField(postService,"maxAllPostsResults",2);
+        when(postRepository.findAllBy(any(PageRequest.class),any(PostProjection.class))).thenReturn(Flux.empty());
+        postService.getAllPosts(PostProjection.FULL).blockLast();
+        verify(postRepository).findAllBy(PageRequest.of(0,2,Sort.by("id")),PostProjection.FULL);
+    }
+    @Test
+    void streamAllPosts_should_stream_every_post(){
+        Post post1 = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
+        Post post2 = new Post(2L,"title2","content2","author2",OffsetDateTime.now(),null);
+        when(postRepository.findAll(PostProjection.SUMMARY)).thenReturn(Flux.just(post1,post2));
+        StepVerifier.create(postService.streamAllPosts(PostProjection.SUMMARY),1)
+                .expectNext(post1)
+                .thenRequest(1)
+                .expectNext(post2)
+                .verifyComplete();
+    }
+    @Test
+    void getPosts_should_return_post_data_for_corresponding_page() {
         List<Post> postList = new ArrayList<>();
         postList.add(new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null));
         postList.add(new Post(2L,"title2","content2","author2",OffsetDateTime.now(),OffsetDateTime.now()));
-        when(postRepository.findAllBy(any(PageRequest.class))).thenReturn(Flux.just(postList.get(0),postList.get(1)));
+        when(postRepository.findAllBy(any(PageRequest.class),any(PostProjection.class))).thenReturn(Flux.just(postList.get(0),postList.get(1)));
         when(postRepository.count()).thenReturn(Mono.just(2L));
-        PostData response = postService.getPosts(PageRequest.of(1,3,Sort.by("id"))).block();
+        PostData response = postService.getPosts(PageRequest.of(1,3,Sort.by("id")),PostProjection.FULL).block();
         Assertions.assertEquals(2,response.getPosts().size());
         Assertions.assertEquals(1,response.getPosts().get(0).getId());
         Assertions.assertEquals(2,response.getPosts().get(1).getId());
@@ -56,18 +118,147 @@ class PostServiceImplTest {
         Assertions.assertEquals(2,response.getTotalElements());
         Assertions.assertEquals(1,response.getTotalPages());
     }
+    @Test
+    void getPosts_should_read_page_and_count_in_single_query_when_enabled() {
+        ReflectionTestUtils.setField(postService,"singleQueryPagination",true);
+        List<Post> postList = new ArrayList<>();
+        postList.add(new Post(3L,"title3","content3","author3",OffsetDateTime.now(),null));
+        postList.add(new Post(4L,"title4","content4","author4",OffsetDateTime.now(),null));
+        PageRequest pageRequest = PageRequest.of(1,2,Sort.by("id"));
+        when(postRepository.findPageWithTotalCount(any(PageRequest.class),any(PostProjection.class))).thenReturn(Mono.just(new PageImpl<>(postList,pageRequest,5L)));
+        StepVerifier.create(postService.getPosts(pageRequest,PostProjection.SUMMARY))
+                .assertNext(response->{
+                    Assertions.assertEquals(2,response.getPosts().size());
+                    Assertions.assertEquals(3,response.getPosts().get(0).getId());
+                    Assertions.assertEquals(1,response.getNumber());
+                    Assertions.assertEquals(2,response.getSize());
+                    Assertions.assertEquals(5,response.getTotalElements());
+                    Assertions.assertEquals(3,response.getTotalPages());
+                })
+                .verifyComplete();
+        verify(postRepository,never()).count();
+    }
+
+    @Test
+    void getPostsConnection_should_return_first_page_with_next_page_flag(){
+        List<Post> postList = new ArrayList<>();
+        postList.add(new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null));
+        postList.add(new Post(2L,"title2","content2","author2",OffsetDateTime.now(),null));
+        postList.add(new Post(3L,"title3","content3","author3",OffsetDateTime.now(),null));
+        when(postRepository.findKeysetPage(any(Long.class),any(Long.class),eq(Sort.Direction.ASC),anyInt(),any(PostProjection.class)))
+                .thenReturn(Flux.fromIterable(postList));
+        StepVerifier.create(postService.getPostsConnection(2,null,null,null,PostProjection.FULL))
+                .assertNext(connection->{
+                    Assertions.assertEquals(2,connection.getEdges().size());
+                    Assertions.assertEquals(1,connection.getEdges().get(0).getNode().getId());
+                    Assertions.assertEquals(2,connection.getEdges().get(1).getNode().getId());
+                    Assertions.assertTrue(connection.getPageInfo().isHasNextPage());
+                    Assertions.assertFalse(connection.getPageInfo().isHasPreviousPage());
+                    Assertions.assertEquals(connection.getEdges().get(1).getCursor(),connection.getPageInfo().getEndCursor());
+                })
+                .verifyComplete();
+    }
+    @Test
+    void getPostsConnection_should_return_last_page_in_ascending_order(){
+        List<Post> postList = new ArrayList<>();
+        postList.add(new Post(9L,"title9","content9","author9",OffsetDateTime.now(),null));
+        postList.add(new Post(8L,"title8","content8","author8",OffsetDateTime.now(),null));
+        when(postRepository.findKeysetPage(any(Long.class),any(Long.class),eq(Sort.Direction.DESC),anyInt(),any(PostProjection.class)))
+                .thenReturn(Flux.fromIterable(postList));
+        StepVerifier.create(postService.getPostsConnection(null,null,2,null,PostProjection.FULL))
+                .assertNext(connection->{
+                    Assertions.assertEquals(2,connection.getEdges().size());
+                    Assertions.assertEquals(8,connection.getEdges().get(0).getNode().getId());
+                    Assertions.assertEquals(9,connection.getEdges().get(1).getNode().getId());
+                    Assertions.assertFalse(connection.getPageInfo().isHasPreviousPage());
+                    Assertions.assertFalse(connection.getPageInfo().isHasNextPage());
+                })
+                .verifyComplete();
+    }
+    @Test
+    void getPostsConnection_should_throw_InvalidPaginationException_for_malformed_cursor(){
+        Assertions.assertThrows(InvalidPaginationException.class,
+                ()->postService.getPostsConnection(2,"not-a-cursor",null,null,PostProjection.FULL));
+    }
 
     @Test
     void getPostById_should_return_post_with_specified_id(){
-        Post post = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.just(post));
+        Post post = new Post(1L,"title1",null,"author1",OffsetDateTime.now(),null);
+        when(postRepository.findById(any(Long.class),eq(PostProjection.SUMMARY))).thenReturn(Mono.just(post));
         StepVerifier.create(postService.getPostById(2L))
                 .expectNext(post)
                 .verifyComplete();
     }
     @Test
+    void getPostById_should_serve_repeated_reads_from_cache(){
+        Post post = new Post(1L,"title1",null,"author1",OffsetDateTime.now(),null);
+        when(postRepository.findById(any(Long.class),eq(PostProjection.SUMMARY))).thenReturn(Mono.just(post));
+        StepVerifier.create(postService.getPostById(1L)).expectNext(post).verifyComplete();
+        StepVerifier.create(postService.getPostById(1L)).expectNext(post).verifyComplete();
+        verify(postRepository,times(1)).findById(1L,PostProjection.SUMMARY);
+        Assertions.assertEquals(1,postCache.stats().hitCount());
+        Assertions.assertEquals(1,postCache.stats().missCount());
+    }
+    @Test
+    void getPostById_should_coalesce_concurrent_misses_into_one_query(){
+        Post post = new Post(1L,"title1",null,"author1",OffsetDateTime.now(),null);
+        Sinks.One<Post> pending = Sinks.one();
+        when(postRepository.findById(any(Long.class),eq(PostProjection.SUMMARY))).thenReturn(pending.asMono());
+        Mono<List<Post>> both = Mono.zip(postService.getPostById(1L),postService.getPostById(1L)).map(tuple->List.of(tuple.getT1(),tuple.getT2()));
+        StepVerifier.create(both)
+                .then(()->pending.tryEmitValue(post))
+                .expectNext(List.of(post,post))
+                .verifyComplete();
+        verify(postRepository,times(1)).findById(1L,PostProjection.SUMMARY);
+    }
+    @Test
+    void updatePost_should_refresh_cached_post(){
+        Post cached = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
+        Post updated = new Post(1L,"title100","content100","author100",OffsetDateTime.now(),OffsetDateTime.now());
+        when(postRepository.findById(any(Long.class),eq(PostProjection.SUMMARY))).thenReturn(Mono.just(cached));
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.just(updated));
+        postService.getPostById(1L).block();
+        postService.updatePost(1L,new PostInput("title100","content100","author100"),null).block();
+        StepVerifier.create(postService.getPostById(1L))
+                .assertNext(post->{
+                    Assertions.assertEquals("title100",post.getTitle());
+                    Assertions.assertEquals(10,post.getContentLength());
+                    Assertions.assertNull(post.getContent());
+                })
+                .verifyComplete();
+        Assertions.assertEquals("content100",updated.getContent());
+    }
+    @Test
+    void searchPosts_should_break_sort_ties_by_id(){
+        PostFilter filter = PostFilter.builder().titlePrefix("title").build();
+        when(postRepository.search(any(),any(),anyInt(),any())).thenReturn(Flux.empty());
+        StepVerifier.create(postService.searchPosts(filter,List.of(new PostSort(PostSortField.CREATED_AT,Sort.Direction.DESC)),10,PostProjection.SUMMARY))
+                .verifyComplete();
+        verify(postRepository,times(1)).search(filter,Sort.by(Sort.Order.desc("createdAt"),Sort.Order.asc("id")),10,PostProjection.SUMMARY);
+    }
+    @Test
+    void getPostsByIds_should_query_only_ids_missing_from_cache(){
+        Post post1 = new Post(1L,"title1",null,"author1",OffsetDateTime.now(),null);
+        Post post2 = new Post(2L,"title2",null,"author2",OffsetDateTime.now(),null);
+        postCache.put(post1);
+        when(postRepository.findAllById(anyCollection(),eq(PostProjection.SUMMARY))).thenReturn(Flux.just(post2));
+        StepVerifier.create(postService.getPostsByIds(List.of(1L,2L,3L)).collectList())
+                .assertNext(posts->Assertions.assertEquals(Set.of(post1,post2),Set.copyOf(posts)))
+                .verifyComplete();
+        verify(postRepository,times(1)).findAllById(Set.of(2L,3L),PostProjection.SUMMARY);
+    }
+    @Test
+    void getPostContents_should_read_content_only_for_the_requested_ids(){
+        when(postRepository.findAllById(anyCollection(),eq(PostProjection.FULL))).thenReturn(Flux.just(
+                new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null)));
+        StepVerifier.create(postService.getPostContents(List.of(1L,2L)))
+                .expectNext(Map.of(1L,"content1"))
+                .verifyComplete();
+        verify(postRepository,times(1)).findAllById(List.of(1L,2L),PostProjection.FULL);
+    }
+    @Test
     void getPostById_should_throw_NoPostFoundException_if_no_post_found(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.empty());
+        when(postRepository.findById(any(Long.class),eq(PostProjection.SUMMARY))).thenReturn(Mono.empty());
         StepVerifier.create(postService.getPostById(1L))
                 .expectErrorMatches(throwable->throwable instanceof PostNotFoundException)
                 .verify();
@@ -92,35 +283,153 @@ class PostServiceImplTest {
     @Test
     void updatePost_should_successfully_update_post(){
         Post post1 = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.just(post1));
-        when(postRepository.save(any(Post.class))).thenReturn(Mono.just(post1));
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.just(post1));
         PostInput postInput = new PostInput("title100","content100","author100");
-        StepVerifier.create(postService.updatePost(3L,postInput))
+        StepVerifier.create(postService.updatePost(3L,postInput,null))
                 .expectNext(post1)
                 .verifyComplete();
+        verify(postRepository,never()).findById(any(Long.class),any(PostProjection.class));
+        verify(postRepository,never()).save(any(Post.class));
     }
     @Test
     void updatePost_should_throw_PostNotFoundException_if_post_not_found(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.empty());
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.empty());
         PostInput postInput = new PostInput("title100","content100","author100");
-        StepVerifier.create(postService.updatePost(1L,postInput))
+        StepVerifier.create(postService.updatePost(1L,postInput,null))
                 .expectErrorMatches(throwable->throwable instanceof PostNotFoundException)
                 .verify();
+        verify(postRepository,never()).existsById(any(Long.class));
+    }
+    @Test
+    void updatePost_should_throw_PostVersionConflictException_if_version_is_stale(){
+        when(postRepository.updateAndReturnById(any(),any(),any(),any(),any(),any())).thenReturn(Mono.empty());
+        when(postRepository.existsById(any(Long.class))).thenReturn(Mono.just(true));
+        PostInput postInput = new PostInput("title100","content100","author100");
+        StepVerifier.create(postService.updatePost(1L,postInput,2L))
+                .expectErrorMatches(throwable->throwable instanceof PostVersionConflictException)
+                .verify();
     }
     @Test
     void deletePost_should_successfully_delete_post(){
         Post post = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.just(post));
-        when(postRepository.deleteById(any(Long.class))).thenReturn(Mono.empty());
-        StepVerifier.create(postService.deletePost(2L))
+        when(postRepository.deleteAndReturnById(any(Long.class))).thenReturn(Mono.just(post));
+        StepVerifier.create(postService.deletePost(2L,PostProjection.SUMMARY))
                 .expectNext(post)
                 .verifyComplete();
+        verify(postRepository,never()).findById(any(Long.class),any(PostProjection.class));
+    }
+    @Test
+    void deletePost_should_tombstone_post_when_soft_delete_enabled(){
+        ReflectionTestUtils.setField(postService,"softDelete",true);
+        Post post = new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null);
+        when(postRepository.softDeleteAndReturnById(any(Long.class),any(OffsetDateTime.class))).thenReturn(Mono.just(post));
+        StepVerifier.create(postService.deletePost(1L,PostProjection.SUMMARY))
+                .expectNext(post)
+                .verifyComplete();
+        verify(postRepository,never()).deleteAndReturnById(any(Long.class));
     }
     @Test
     void deletePost_should_throw_PostNotFoundException_if_post_not_found(){
-        when(postRepository.findById(any(Long.class))).thenReturn(Mono.empty());
-        StepVerifier.create(postService.deletePost(1L))
+        when(postRepository.deleteAndReturnById(any(Long.class))).thenReturn(Mono.empty());
+        StepVerifier.create(postService.deletePost(1L,PostProjection.SUMMARY))
                 .expectErrorMatches(throwable->throwable instanceof PostNotFoundException)
                 .verify();
     }
+    @Test
+    void appendPostContent_should_return_post_after_append(){
+        Post post = new Post(1L,"title1","content1-more","author1",OffsetDateTime.now(),null);
+        when(postRepository.appendContent(any(Long.class),any(String.class),any(OffsetDateTime.class),anyInt())).thenReturn(Mono.just(1));
+        when(postRepository.findById(1L,PostProjection.FULL)).thenReturn(Mono.just(post));
+        when(postRepository.findById(1L,PostProjection.SUMMARY)).thenReturn(Mono.just(new Post(1L,"title1",null,"author1",OffsetDateTime.now(),null)));
+        PostContentSlice indexedPrefix = new PostContentSlice(1L,0,1000);
+        when(postRepository.findContentSlices(List.of(indexedPrefix))).thenReturn(Mono.just(Map.of(indexedPrefix,"content1-more")));
+        StepVerifier.create(postService.appendPostContent(1L,"-more",PostProjection.FULL))
+                .expectNext(post)
+                .verifyComplete();
+    }
+    @Test
+    void searchPostsByText_should_rank_title_matches_first_and_page_by_cursor(){
+        Post inContent = new Post(1L,"Cooking","all about reactive streams","author1",OffsetDateTime.now(),null);
+        Post inTitle = new Post(2L,"Reactive streams","backpressure explained","author2",OffsetDateTime.now(),null);
+        Post unrelated = new Post(3L,"Gardening","tomatoes","author3",OffsetDateTime.now(),null);
+        when(postRepository.save(any(Post.class))).thenReturn(Mono.just(inContent),Mono.just(inTitle),Mono.just(unrelated));
+        postService.addPost(new PostInput("Cooking","all about reactive streams","author1")).block();
+        postService.addPost(new PostInput("Reactive streams","backpressure explained","author2")).block();
+        postService.addPost(new PostInput("Gardening","tomatoes","author3")).block();
+        PostConnection firstPage = postService.searchPostsByText("reactive",1,null).block();
+        Assertions.assertEquals(List.of(inTitle.getId()),firstPage.getEdges().stream().map(edge->edge.getNode().getId()).toList());
+        Assertions.assertTrue(firstPage.getPageInfo().isHasNextPage());
+        PostConnection secondPage = postService.searchPostsByText("reactive",1,firstPage.getPageInfo().getEndCursor()).block();
+        Assertions.assertEquals(List.of(inContent.getId()),secondPage.getEdges().stream().map(edge->edge.getNode().getId()).toList());
+        Assertions.assertFalse(secondPage.getPageInfo().isHasNextPage());
+        Assertions.assertTrue(secondPage.getPageInfo().isHasPreviousPage());
+        StepVerifier.create(postService.searchPostsByText("reactive",Integer.MAX_VALUE,secondPage.getPageInfo().getEndCursor()))
+                .assertNext(connection->Assertions.assertTrue(connection.getEdges().isEmpty()))
+                .verifyComplete();
+        String pastEnd = Base64.getUrlEncoder().withoutPadding().encodeToString("rank:5".getBytes(StandardCharsets.UTF_8));
+        StepVerifier.create(postService.searchPostsByText("reactive",Integer.MAX_VALUE,pastEnd))
+                .expectErrorMatches(throwable->throwable instanceof InvalidPaginationException)
+                .verify();
+    }
+    @Test
+    void searchPostsByText_should_forget_deleted_posts_and_reject_bad_queries(){
+        Post post = new Post(1L,"Reactive","content","author1",OffsetDateTime.now(),null);
+        postSearchIndex.index(post).block();
+        when(postRepository.deleteAndReturnById(1L)).thenReturn(Mono.just(post));
+        postService.deletePost(1L,PostProjection.SUMMARY).block();
+        StepVerifier.create(postService.searchPostsByText("reactive",10,null))
+                .assertNext(connection->Assertions.assertTrue(connection.getEdges().isEmpty()))
+                .verifyComplete();
+        StepVerifier.create(postService.searchPostsByText("title:(unbalanced",10,null))
+                .expectErrorMatches(throwable->throwable instanceof InvalidSearchQueryException)
+                .verify();
+    }
+    @Test
+    void reindexPosts_should_rebuild_index_from_repository(){
+        postSearchIndex.index(new Post(9L,"Stale","stale","author9",OffsetDateTime.now(),null)).block();
+        when(postRepository.findAllWithContentPrefix(1000)).thenReturn(Flux.range(1,250)
+                .map(i->new Post((long) i,"title"+i,"shared words","author",OffsetDateTime.now(),null)));
+        StepVerifier.create(postService.reindexPosts()).expectNext(250L).verifyComplete();
+        Assertions.assertEquals(250L,postSearchIndex.search("shared",0,1).block().totalHits());
+        Assertions.assertEquals(0L,postSearchIndex.search("stale",0,1).block().totalHits());
+    }
+    @Test
+    void reindexPosts_should_serve_old_index_until_swap_and_replay_concurrent_writes(){
+        postSearchIndex.index(new Post(9L,"Stale","stale","author9",OffsetDateTime.now(),null)).block();
+        Sinks.Many<Post> posts = Sinks.many().unicast().onBackpressureBuffer();
+        when(postRepository.findAllWithContentPrefix(1000)).thenReturn(posts.asFlux());
+        Mono<Long> rebuilt = postService.reindexPosts().cache();
+        rebuilt.subscribe();
+        // Posts are read once the rebuild has started collecting concurrent writes.
+        long deadline = System.nanoTime()+Duration.ofSeconds(5).toNanos();
+        while(posts.currentSubscriberCount()==0 && System.nanoTime()<deadline){
+            Thread.onSpinWait();
+        }
+        posts.tryEmitNext(new Post(1L,"Deleted","shared","author1",OffsetDateTime.now(),null));
+        posts.tryEmitNext(new Post(2L,"Renamed","shared","author2",OffsetDateTime.now(),null));
+        postSearchIndex.remove(List.of(1L)).block();
+        postSearchIndex.index(new Post(2L,"Fresh","shared","author2",OffsetDateTime.now(),null)).block();
+        Assertions.assertEquals(1L,postSearchIndex.search("stale",0,1).block().totalHits());
+        posts.tryEmitComplete();
+        StepVerifier.create(rebuilt).expectNext(2L).verifyComplete();
+        Assertions.assertEquals(List.of(2L),postSearchIndex.search("shared",0,10).block().ids());
+        Assertions.assertEquals(1L,postSearchIndex.search("fresh",0,1).block().totalHits());
+        Assertions.assertEquals(0L,postSearchIndex.search("renamed OR stale",0,1).block().totalHits());
+    }
+    @Test
+    void appendPostContent_should_throw_PostNotFoundException_if_post_not_found(){
+        when(postRepository.appendContent(any(Long.class),any(String.class),any(OffsetDateTime.class),anyInt())).thenReturn(Mono.just(0));
+        when(postRepository.existsById(any(Long.class))).thenReturn(Mono.just(false));
+        StepVerifier.create(postService.appendPostContent(1L,"-more",PostProjection.SUMMARY))
+                .expectErrorMatches(throwable->throwable instanceof PostNotFoundException)
+                .verify();
+    }
+    @Test
+    void appendPostContent_should_throw_PostContentTooLargeException_if_limit_exceeded(){
+        when(postRepository.appendContent(any(Long.class),any(String.class),any(OffsetDateTime.class),anyInt())).thenReturn(Mono.just(0));
+        when(postRepository.existsById(any(Long.class))).thenReturn(Mono.just(true));
+        StepVerifier.create(postService.appendPostContent(1L,"-more",PostProjection.SUMMARY))
+                .expectErrorMatches(throwable->throwable instanceof PostContentTooLargeException)
+                .verify();
+    }
 }
@@ -1,39 +1,85 @@
 package com.cg.bms;
 
+import com.cg.bms.event.PostChangeLog;
+import com.cg.bms.event.PostDataVersion;
 import com.cg.bms.exception.PostNotFoundException;
+import com.cg.bms.graphql.CachingPreparsedDocumentProvider;
+import com.cg.bms.graphql.PrincipalQueryBudgets;
+import com.cg.bms.model.PostContentSlice;
 import com.cg.bms.model.PostData;
+import com.cg.bms.model.PostProjection;
+import com.cg.bms.routing.ConnectionRoute;
+import com.cg.bms.service.PostChangeTailer;
 import com.cg.bms.service.PostServiceImpl;
 import graphql.ErrorType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import com.cg.bms.model.Post;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
-@SpringBootTest(webEnvironment=SpringBootTest.WebEnvironment.MOCK)
+@SpringBootTest(webEnvironment=SpringBootTest.WebEnvironment.MOCK,
+        properties="bms.graphql.cache-control.operations.PostPage=max-age=30, public")
 @AutoConfigureGraphQlTester
+@AutoConfigureWebTestClient
 class QueryTests {
     @Autowired
     GraphQlTester graphQlTester;
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    PrincipalQueryBudgets principalQueryBudgets;
+    @Autowired
+    PostChangeTailer postChangeTailer;
+    @SpyBean
+    PostDataVersion postDataVersion;
+    @Autowired
+    PostChangeLog postChangeLog;
     @MockBean
     PostServiceImpl postService;
     @Test
     void getAllPosts_works_successfully(){
-        when(postService.getAllPosts()).thenReturn(Flux.just(
+        when(postService.getAllPosts(any(PostProjection.class))).thenReturn(Flux.just(
             Post.builder().id(1L)
                             .title("title1")
                             .author("author1")
@@ -51,14 +97,47 @@ class QueryTests {
                         .execute()
                         .path("data.getAllPosts[*].title")
                         .entityList(String.class).contains("title1","title2");
-        verify(postService,times(1)).getAllPosts();
+        verify(postService,times(1)).getAllPosts(PostProjection.FULL);
+    }
+    @Test
+    void getAllPosts_skips_content_when_not_selected(){
+        when(postService.getAllPosts(any(PostProjection.class))).thenReturn(Flux.just(
+                Post.builder().id(1L)
+                        .title("title1")
+                        .author("author1")
+                        .createdAt(OffsetDateTime.now())
+                        .build()));
+        graphQlTester.documentName("query/getAllPostTitles")
+                .execute()
+                .path("data.getAllPosts[*].title")
+                .entityList(String.class).contains("title1");
+        verify(postService,times(1)).getAllPosts(PostProjection.SUMMARY);
     }
     @Test
-    void getPosts_works_successfully() throws ExecutionException, InterruptedException {
+    void streamPosts_emits_posts_in_chunks(){
+        when(postService.streamAllPosts(any(PostProjection.class))).thenReturn(Flux.range(1,5).map(i->
+                Post.builder().id((long) i)
+                        .title("title"+i)
+                        .author("author"+i)
+                        .createdAt(OffsetDateTime.now())
+                        .build()));
+        Flux<List<Post>> chunks = graphQlTester.documentName("subscription/streamPosts")
+                .variable("chunkSize",2)
+                .executeSubscription()
+                .toFlux()
+                .map(response->response.path("streamPosts").entityList(Post.class).get());
+        StepVerifier.create(chunks)
+                .assertNext(chunk->Assertions.assertEquals(2,chunk.size()))
+                .assertNext(chunk->Assertions.assertEquals(2,chunk.size()))
+                .assertNext(chunk->Assertions.assertEquals(5L,chunk.get(0).getId()))
+                .verifyComplete();
+    }
+    @Test
+    void getPosts_works_successfully() {
         List<Post> postList = new ArrayList<>();
         postList.add(new Post(1L,"title1","content1","author1",OffsetDateTime.now(),null));
         postList.add(new Post(2L,"title2","content2","author2",OffsetDateTime.now(),OffsetDateTime.now()));
-        when(postService.getPosts(any(PageRequest.class))).thenReturn(Mono.just(new PostData(postList,10,20L,30L,40)));
+        when(postService.getPosts(any(PageRequest.class),any(PostProjection.class))).thenReturn(Mono.just(new PostData(postList,10,20L,30L,40)));
         PostData postData = graphQlTester.documentName("query/getPosts")
                 .variable("pageNumber",1)
                 .variable("pageSize",2)
@@ -113,8 +192,8 @@ class QueryTests {
                 });
     }
     @Test
-    void getPosts_throws_exception_if_service_throws_exception() throws ExecutionException, InterruptedException {
-        Mockito.doThrow(InterruptedException.class).when(postService).getPosts(any(PageRequest.class));
+    void getPosts_throws_exception_if_service_throws_exception() {
+        Mockito.doThrow(IllegalStateException.class).when(postService).getPosts(any(PageRequest.class),any(PostProjection.class));
         graphQlTester.documentName("query/getPosts")
                 .variable("pageNumber",1)
                         .variable("pageSize",2)
@@ -126,8 +205,8 @@ class QueryTests {
     }
     @Test
     void getPostById_works_successfully(){
-        when(postService.getPostById(any(Long.class))).thenReturn(Mono.just(
-                Post.builder().id(100L)
+        when(postService.getPostsByIds(anyCollection())).thenReturn(Flux.just(
+                Post.builder().id(1L)
                         .title("title100")
                         .author("author100")
                         .content("content100")
@@ -147,8 +226,88 @@ class QueryTests {
                 });
     }
     @Test
+    void contentSlice_is_cut_from_loaded_content(){
+        when(postService.getPostsByIds(anyCollection())).thenReturn(Flux.just(
+                Post.builder().id(100L)
+                        .title("title100")
+                        .author("author100")
+                        .content("0123456789")
+                        .createdAt(OffsetDateTime.now())
+                        .build()
+        ));
+        graphQlTester.documentName("query/getPostContentSlice")
+                .variable("id",100L)
+                .variable("offset",3)
+                .variable("length",4)
+                .execute()
+                .path("data.getPostById.contentSlice").entity(String.class).isEqualTo("3456")
+                .path("data.getPostById.contentLength").entity(Integer.class).isEqualTo(10);
+        verify(postService,never()).getPostContentSlices(anyCollection());
+        verify(postService,never()).getPostContentLengths(anyCollection());
+    }
+    @Test
+    void content_fields_of_a_page_are_resolved_with_one_service_call_each(){
+        when(postService.getPosts(any(PageRequest.class),any(PostProjection.class))).thenReturn(Mono.just(new PostData(List.of(
+                Post.builder().id(1L).title("title1").author("author1").createdAt(OffsetDateTime.now()).build(),
+                Post.builder().id(2L).title("title2").author("author2").createdAt(OffsetDateTime.now()).build()),2,2L,1L,0)));
+        when(postService.getPostContentSlices(anyCollection())).thenAnswer(invocation->{
+            Collection<PostContentSlice> slices = invocation.getArgument(0);
+            return Mono.just(slices.stream().collect(Collectors.toMap(slice->slice, slice->"slice"+slice.postId())));
+        });
+        when(postService.getPostContentLengths(anyCollection())).thenAnswer(invocation->{
+            Collection<Long> ids = invocation.getArgument(0);
+            return Mono.just(ids.stream().collect(Collectors.toMap(id->id, id->id.intValue()*10)));
+        });
+        graphQlTester.document("query{getPosts(pageNumber:0,pageSize:2){posts{contentLength,contentSlice(offset:1,length:2)}}}")
+                .execute()
+                .path("data.getPosts.posts[*].contentSlice").entityList(String.class).containsExactly("slice1","slice2")
+                .path("data.getPosts.posts[*].contentLength").entityList(Integer.class).containsExactly(10,20);
+        verify(postService,times(1)).getPostContentSlices(Set.of(new PostContentSlice(1L,1,2),new PostContentSlice(2L,1,2)));
+        verify(postService,times(1)).getPostContentLengths(anyCollection());
+    }
+    @Test
+    void getPostById_batches_aliased_lookups_into_one_service_call(){
+        when(postService.getPostsByIds(anyCollection())).thenAnswer(invocation->{
+            Collection<Long> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(id->Post.builder().id(id)
+                    .title("title"+id)
+                    .author("author"+id)
+                    .createdAt(OffsetDateTime.now())
+                    .build());
+        });
+        graphQlTester.document("query{first:getPostById(id:1){title} second:getPostById(id:2){title} again:getPostById(id:1){title}}")
+                .execute()
+                .path("data.first.title").entity(String.class).isEqualTo("title1")
+                .path("data.second.title").entity(String.class).isEqualTo("title2")
+                .path("data.again.title").entity(String.class).isEqualTo("title1");
+        verify(postService,times(1)).getPostsByIds(Set.of(1L,2L));
+        verify(postService,never()).getPostById(any(Long.class));
+    }
+    @Test
+    void getPostById_loads_content_only_when_selected(){
+        when(postService.getPostsByIds(anyCollection())).thenAnswer(invocation->{
+            Collection<Long> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(id->Post.builder().id(id)
+                    .title("title"+id)
+                    .author("author"+id)
+                    .contentLength(8)
+                    .createdAt(OffsetDateTime.now())
+                    .build());
+        });
+        when(postService.getPostContents(anyCollection())).thenReturn(Mono.just(Map.of(1L,"content1",2L,"content2")));
+        graphQlTester.document("query{first:getPostById(id:1){id title}}")
+                .execute()
+                .path("data.first.title").entity(String.class).isEqualTo("title1");
+        verify(postService,never()).getPostContents(anyCollection());
+        graphQlTester.document("query{first:getPostById(id:1){content} second:getPostById(id:2){content}}")
+                .execute()
+                .path("data.first.content").entity(String.class).isEqualTo("content1")
+                .path("data.second.content").entity(String.class).isEqualTo("content2");
+        verify(postService,times(1)).getPostContents(Set.of(1L,2L));
+    }
+    @Test
     void getPostById_throws_error_if_no_post_found(){
-        when(postService.getPostById(any(Long.class))).thenReturn(Mono.error(new PostNotFoundException("No post found for id")));
+        when(postService.getPostsByIds(anyCollection())).thenReturn(Flux.empty());
         graphQlTester.documentName("query/getPostById")
                 .variable("id",1L)
                 .execute()
@@ -156,7 +315,7 @@ class QueryTests {
                 .satisfy(responseErrors->{
                     Assertions.assertEquals(1,responseErrors.size());
                     Assertions.assertEquals(ErrorType.DataFetchingException,responseErrors.get(0).getErrorType());
-                    Assertions.assertEquals("No post found for id",responseErrors.get(0).getMessage());
+                    Assertions.assertEquals("No post found for id - 1",responseErrors.get(0).getMessage());
                 });
     }
     @Test
@@ -180,4 +339,164 @@ class QueryTests {
                 .satisfy(responseErrors ->Assertions.assertEquals(
                         org.springframework.graphql.execution.ErrorType.INTERNAL_ERROR,responseErrors.get(0).getErrorType()));
     }
+    @Test
+    @WithMockUser
+    void persisted_query_is_registered_by_hash_and_served_without_text() throws Exception {
+        when(postService.getPostsByIds(anyCollection())).thenReturn(Flux.just(
+                Post.builder().id(1L).title("title1").author("author1").content("content1").build()));
+        // Unique per run: the persisted-query cache outlives this test when the suite re-runs it.
+        String query = "query { getPostById(id: 1) { id } } # " + UUID.randomUUID();
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8)));
+        Map<String,Object> extensions = Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash));
+        postGraphQl(Map.of("extensions", extensions))
+                .jsonPath("$.errors[0].message").isEqualTo("PersistedQueryNotFound");
+        postGraphQl(Map.of("query", "query { getPostById(id: 2) { id } }", "extensions", extensions))
+                .jsonPath("$.errors[0].message").isEqualTo("PersistedQueryIdInvalid");
+        postGraphQl(Map.of("query", query, "extensions", extensions))
+                .jsonPath("$.data.getPostById.id").isEqualTo("1");
+        FunctionCounter hits = meterRegistry.get("cache.gets").tag("cache", CachingPreparsedDocumentProvider.PERSISTED_QUERIES)
+                .tag("result", "hit").functionCounter();
+        double hitsBefore = hits.count();
+        postGraphQl(Map.of("extensions", extensions))
+                .jsonPath("$.data.getPostById.id").isEqualTo("1");
+        Assertions.assertEquals(hitsBefore+1, hits.count());
+    }
+    @Test
+    void aliased_getAllPosts_is_rejected_before_execution_when_over_cost(){
+        graphQlTester.document("query{a:getAllPosts{id,content} b:getAllPosts{id,content} c:getAllPosts{id,content} d:getAllPosts{id,content} e:getAllPosts{id,content}}")
+                .execute()
+                .errors()
+                .satisfy(responseErrors->{
+                    Assertions.assertEquals(1,responseErrors.size());
+                    Assertions.assertEquals(ErrorType.ValidationError,responseErrors.get(0).getErrorType());
+                    Assertions.assertEquals("Query cost 55005 exceeds the limit of 50000",responseErrors.get(0).getMessage());
+                });
+        verify(postService, never()).getAllPosts(any(PostProjection.class));
+    }
+    @Test
+    void operation_over_principal_budget_is_shed(){
+        ReflectionTestUtils.setField(principalQueryBudgets,"maxConcurrentOperations",0);
+        try{
+            graphQlTester.documentName("query/getPostById")
+                    .variable("id",1L)
+                    .execute()
+                    .errors()
+                    .satisfy(responseErrors->{
+                        Assertions.assertEquals(1,responseErrors.size());
+                        Assertions.assertEquals(ErrorType.ExecutionAborted,responseErrors.get(0).getErrorType());
+                    });
+        }
+        finally{
+            ReflectionTestUtils.setField(principalQueryBudgets,"maxConcurrentOperations",16);
+        }
+        verify(postService, never()).getPostsByIds(anyCollection());
+    }
+    @Test
+    void subscription_holds_principal_budget_until_the_stream_ends(){
+        when(postService.streamAllPosts(any(PostProjection.class))).thenReturn(Flux.<Post>never());
+        ReflectionTestUtils.setField(principalQueryBudgets,"maxConcurrentOperations",1);
+        try{
+            Disposable stream = graphQlTester.documentName("subscription/streamPosts")
+                    .executeSubscription()
+                    .toFlux()
+                    .subscribe();
+            graphQlTester.documentName("query/getPostById")
+                    .variable("id",1L)
+                    .execute()
+                    .errors()
+                    .satisfy(responseErrors->Assertions.assertEquals(ErrorType.ExecutionAborted,responseErrors.get(0).getErrorType()));
+            stream.dispose();
+            when(postService.getPostsByIds(anyCollection())).thenReturn(Flux.just(
+                    Post.builder().id(1L).title("title1").author("author1").createdAt(OffsetDateTime.now()).build()));
+            graphQlTester.documentName("query/getPostById")
+                    .variable("id",1L)
+                    .execute()
+                    .path("getPostById.title").entity(String.class).isEqualTo("title1");
+        }
+        finally{
+            ReflectionTestUtils.setField(principalQueryBudgets,"maxConcurrentOperations",16);
+        }
+    }
+    @Test
+    @WithMockUser
+    void get_query_is_tagged_and_answered_with_304_while_posts_are_unchanged(){
+        when(postService.getPosts(any(PageRequest.class),any(PostProjection.class))).thenReturn(Mono.just(
+                new PostData(List.of(Post.builder().id(1L).title("title1").author("author1").build()),1,1L,1L,0)));
+        postChangeTailer.poll().block();
+        String query = "query PostPage{getPosts(pageNumber:0,pageSize:1){posts{id,title}}}";
+        String etag = getGraphQl(query, "PostPage", null)
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=30, public")
+                .expectBody().jsonPath("$.data.getPosts.posts[0].title").isEqualTo("title1")
+                .returnResult().getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+        getGraphQl(query, "PostPage", etag)
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+        verify(postService, times(1)).getPosts(any(PageRequest.class),any(PostProjection.class));
+        postChangeLog.updated(List.of(Post.builder().id(1L).title("title1").author("author1").build())).block();
+        String changed = getGraphQl(query, "PostPage", etag)
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseHeaders().getETag();
+        Assertions.assertNotEquals(etag, changed);
+        verify(postService, times(2)).getPosts(any(PageRequest.class),any(PostProjection.class));
+        postChangeTailer.poll().block();
+        Assertions.assertFalse(postDataVersion.isAheadOfReplica());
+    }
+    @Test
+    @WithMockUser
+    void get_query_after_a_local_write_reads_the_primary_and_revalidates(){
+        List<Optional<ConnectionRoute>> routes = new CopyOnWriteArrayList<>();
+        when(postService.getPosts(any(PageRequest.class),any(PostProjection.class))).thenReturn(Mono.deferContextual(context -> {
+            routes.add(context.getOrEmpty(ConnectionRoute.class));
+            return Mono.just(new PostData(List.of(Post.builder().id(1L).title("written").author("author1").build()),1,1L,1L,0));
+        }));
+        postChangeTailer.poll().block();
+        // A change committed here that the tailer has not yet seen on the replica; the spy is reset after the test.
+        doReturn(true).when(postDataVersion).isAheadOfReplica();
+        String query = "query PostPage{getPosts(pageNumber:0,pageSize:1){posts{id,title}}}";
+        String etag = getGraphQl(query, "PostPage", null)
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.data.getPosts.posts[0].title").isEqualTo("written")
+                .returnResult().getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+        Assertions.assertEquals(List.of(Optional.of(ConnectionRoute.PRIMARY)), routes);
+        getGraphQl(query, "PostPage", etag)
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+        verify(postService, times(1)).getPosts(any(PageRequest.class),any(PostProjection.class));
+    }
+    @Test
+    @WithMockUser
+    void get_mutation_is_rejected_without_running(){
+        getGraphQl("mutation{reindexPosts}", null, null)
+                .expectStatus().isEqualTo(HttpStatus.METHOD_NOT_ALLOWED)
+                .expectHeader().valueEquals(HttpHeaders.ALLOW, "POST")
+                .expectHeader().doesNotExist(HttpHeaders.ETAG);
+        verify(postService, never()).reindexPosts();
+    }
+    private WebTestClient.ResponseSpec getGraphQl(String query, String operationName, String ifNoneMatch){
+        return webTestClient.get()
+                .uri(uri -> {
+                    uri.path("/graphql").queryParam("query", "{query}");
+                    if(operationName!=null){
+                        uri.queryParam("operationName", operationName);
+                    }
+                    return uri.build(query);
+                })
+                .headers(headers -> {
+                    if(ifNoneMatch!=null){
+                        headers.setIfNoneMatch(ifNoneMatch);
+                    }
+                })
+                .exchange();
+    }
+    private WebTestClient.BodyContentSpec postGraphQl(Map<String,Object> body){
+        return webTestClient.mutateWith(csrf()).post().uri("/graphql")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody();
+    }
 }
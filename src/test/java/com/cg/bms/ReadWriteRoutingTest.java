@@ -0,0 +1,102 @@
+package com.cg.bms;
+
+import com.cg.bms.routing.ReadReplica;
+import com.cg.bms.routing.ReadWriteRoutingConnectionFactory;
+import com.cg.bms.routing.ReadWriteRoutingInterceptor;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and the replica; each knows its own name.
+ */
+class ReadWriteRoutingTest {
+    DatabaseClient databaseClient;
+
+    public static class Origins {
+        private final DatabaseClient databaseClient;
+
+        public Origins(DatabaseClient databaseClient){
+            this.databaseClient=databaseClient;
+        }
+
+        @ReadReplica
+        public Mono<String> read(){
+            return origin();
+        }
+
+        public Mono<String> write(){
+            return origin();
+        }
+
+        private Mono<String> origin(){
+            return databaseClient.sql("SELECT name FROM origin").map(row -> row.get(0, String.class)).one();
+        }
+    }
+
+    @BeforeEach
+    void setUp(){
+        ReadWriteRoutingConnectionFactory routing = new ReadWriteRoutingConnectionFactory(database("primary"), database("replica"));
+        routing.afterPropertiesSet();
+        databaseClient = DatabaseClient.create(routing);
+    }
+
+    @Test
+    void reads_go_to_the_replica_and_everything_else_to_the_primary(){
+        Origins origins = origins(Duration.ZERO);
+        Assertions.assertEquals("replica", origins.read().block());
+        Assertions.assertEquals("primary", origins.write().block());
+        Assertions.assertEquals("primary", origin().block());
+    }
+
+    @Test
+    void a_principal_reads_its_own_writes_from_the_primary_within_the_window(){
+        Origins origins = origins(Duration.ofMinutes(1));
+        Assertions.assertEquals("replica", as("alice", origins.read()).block());
+        Assertions.assertEquals("primary", as("alice", origins.write()).block());
+        Assertions.assertEquals("primary", as("alice", origins.read()).block());
+        Assertions.assertEquals("replica", as("bob", origins.read()).block());
+        Assertions.assertEquals("replica", origins.read().block());
+    }
+
+    @Test
+    void without_a_window_writes_do_not_pin_reads_to_the_primary(){
+        Origins origins = origins(Duration.ZERO);
+        Assertions.assertEquals("primary", as("alice", origins.write()).block());
+        Assertions.assertEquals("replica", as("alice", origins.read()).block());
+    }
+
+    private Origins origins(Duration readYourWrites){
+        ProxyFactory proxyFactory = new ProxyFactory(new Origins(databaseClient));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new DefaultPointcutAdvisor(ReadWriteRoutingInterceptor.POINTCUT, new ReadWriteRoutingInterceptor(readYourWrites)));
+        return (Origins) proxyFactory.getProxy();
+    }
+
+    private Mono<String> origin(){
+        return databaseClient.sql("SELECT name FROM origin").map(row -> row.get(0, String.class)).one();
+    }
+
+    private static <T> Mono<T> as(String principal, Mono<T> call){
+        return call.contextWrite(ReactiveSecurityContextHolder.withAuthentication(new TestingAuthenticationToken(principal, null)));
+    }
+
+    private static ConnectionFactory database(String name){
+        ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///"+name+"-"+UUID.randomUUID()+"?options=DB_CLOSE_DELAY=-1");
+        DatabaseClient client = DatabaseClient.create(connectionFactory);
+        client.sql("CREATE TABLE origin(name VARCHAR(16))").then()
+                .then(client.sql("INSERT INTO origin VALUES('"+name+"')").then())
+                .block();
+        return connectionFactory;
+    }
+}
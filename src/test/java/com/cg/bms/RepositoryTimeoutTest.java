@@ -0,0 +1,68 @@
+package com.cg.bms;
+
+import com.cg.bms.exception.DatabaseBusyException;
+import com.cg.bms.repository.RepositoryTimeoutInterceptor;
+import com.cg.bms.repository.TimeoutPerStatement;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import java.time.Duration;
+
+/**
+ * Each "statement" takes 40ms against a 100ms timeout; five of them take longer than the timeout.
+ */
+class RepositoryTimeoutTest {
+    static final Duration TIMEOUT = Duration.ofMillis(100);
+
+    public static class Writes {
+        public Mono<Long> write(){
+            return statements();
+        }
+
+        @TimeoutPerStatement
+        public Mono<Long> writeContent(){
+            return statements();
+        }
+
+        @TimeoutPerStatement
+        public Mono<Long> writeStuckContent(){
+            return Mono.delay(Duration.ofMillis(40)).then(Mono.<Long>never().timeout(TIMEOUT));
+        }
+
+        private static Mono<Long> statements(){
+            return Flux.range(0, 5)
+                    .concatMap(i -> Mono.delay(Duration.ofMillis(40)).timeout(TIMEOUT))
+                    .count();
+        }
+    }
+
+    @Test
+    void a_call_is_bounded_as_a_whole(){
+        StepVerifier.create(writes().write())
+                .expectError(DatabaseBusyException.class)
+                .verify();
+    }
+
+    @Test
+    void a_call_timed_per_statement_may_take_longer_than_the_timeout(){
+        StepVerifier.create(writes().writeContent())
+                .expectNext(5L)
+                .verifyComplete();
+    }
+
+    @Test
+    void a_stuck_statement_still_fails_as_busy(){
+        StepVerifier.create(writes().writeStuckContent())
+                .expectError(DatabaseBusyException.class)
+                .verify();
+    }
+
+    private static Writes writes(){
+        ProxyFactory proxyFactory = new ProxyFactory(new Writes());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new RepositoryTimeoutInterceptor(TIMEOUT));
+        return (Writes) proxyFactory.getProxy();
+    }
+}